@@ -0,0 +1,26 @@
+package org.acme;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+
+/*
+Flyway runs once Hibernate has created or updated the tables, so the migrations only hold what
+Hibernate cannot express: extensions, vendor specific indexes and data backfills.
+ */
+@ApplicationScoped
+@RequiredArgsConstructor
+@Slf4j
+public class DatabaseMigration {
+
+    private final Flyway flyway;
+
+    void migrate(@Observes @Priority(1) StartupEvent event) {
+        int applied = flyway.migrate().migrationsExecuted;
+        log.info("Applied {} database migrations", applied);
+    }
+}
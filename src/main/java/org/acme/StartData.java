@@ -1,10 +1,10 @@
 package org.acme;
 
 
-import at.favre.lib.crypto.bcrypt.BCrypt;
 import io.quarkus.runtime.Startup;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.acme.security.password.PasswordHasher;
 import org.acme.user.UserModel;
 import org.acme.user.UserRepository;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
@@ -17,6 +17,7 @@ import java.util.Set;
 public class StartData {
 
     private final UserRepository userRepository;
+    private final PasswordHasher passwordHasher;
 
     @ConfigProperty(name = "admin.username")
     String username;
@@ -33,7 +34,7 @@ public class StartData {
             UserModel adminUser = new UserModel();
             adminUser.setUsername(username);
             adminUser.setEmail(mail);
-            adminUser.setPassword(BCrypt.withDefaults().hashToString(12,password.toCharArray()));
+            adminUser.setPassword(passwordHasher.hash(password));
             adminUser.setChecked(true);
             Set<String> roleUser = new HashSet<>();
             roleUser.add("admin");
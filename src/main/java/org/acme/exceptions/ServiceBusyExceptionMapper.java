@@ -0,0 +1,24 @@
+package org.acme.exceptions;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Provider;
+
+@Provider
+public class ServiceBusyExceptionMapper implements ExceptionMapper<ServiceBusyException> {
+    @Override
+    public Response toResponse(ServiceBusyException e) {
+
+        StandardMsg err = new StandardMsg(System.currentTimeMillis(), Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                e.getMessage(),"");
+
+        return Response.
+                 status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, e.getRetryAfterSeconds())
+                .entity(err)
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+}
@@ -0,0 +1,17 @@
+package org.acme.outbox;
+
+import io.quarkus.arc.DefaultBean;
+import jakarta.enterprise.context.ApplicationScoped;
+import lombok.extern.slf4j.Slf4j;
+
+//Used until a real mail sender bean is provided
+@DefaultBean
+@ApplicationScoped
+@Slf4j
+public class LoggingOutboxSender implements OutboxSender {
+
+    @Override
+    public void send(OutboxMessage message) {
+        log.info("Url example: {}", message.getPayload());
+    }
+}
@@ -0,0 +1,20 @@
+package org.acme.outbox;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+@ApplicationScoped
+public class Outbox {
+
+    private final OutboxRepository outboxRepository;
+
+    //joins the caller's transaction, so the message exists only if the caller's data was committed
+    @Transactional(Transactional.TxType.MANDATORY)
+    public OutboxMessage enqueue(String type, String recipient, String payload) {
+        OutboxMessage message = new OutboxMessage(type, recipient, payload);
+        outboxRepository.persist(message);
+        return message;
+    }
+}
@@ -0,0 +1,131 @@
+package org.acme.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Drains the outbox in batches. A batch is claimed by moving its availableAt forward by the lease
+in a short transaction, sent with no transaction open, then delivered rows are deleted and failed
+ones rescheduled with exponential backoff. A dispatcher that dies mid-batch leaves its messages to
+be picked up again when the lease ends, so delivery is at least once.
+ */
+@ApplicationScoped
+@Slf4j
+public class OutboxDispatcher {
+
+    @Inject
+    OutboxRepository outboxRepository;
+
+    @Inject
+    OutboxSender sender;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "outbox.batch-size", defaultValue = "100")
+    int batchSize;
+
+    @ConfigProperty(name = "outbox.lease", defaultValue = "1m")
+    Duration lease;
+
+    @ConfigProperty(name = "outbox.max-attempts", defaultValue = "8")
+    int maxAttempts;
+
+    @ConfigProperty(name = "outbox.backoff.initial", defaultValue = "5s")
+    Duration initialBackoff;
+
+    @ConfigProperty(name = "outbox.backoff.max", defaultValue = "30m")
+    Duration maxBackoff;
+
+    private Counter sent;
+    private Counter retried;
+    private Counter failed;
+
+    @PostConstruct
+    void init() {
+        sent = registry.counter("outbox.messages", "result", "sent");
+        retried = registry.counter("outbox.messages", "result", "retried");
+        failed = registry.counter("outbox.messages", "result", "failed");
+    }
+
+    @Scheduled(every = "${outbox.poll-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    public void dispatch() {
+        List<OutboxMessage> batch;
+        do {
+            batch = claim();
+            deliver(batch);
+        } while (batch.size() == batchSize);
+    }
+
+    private List<OutboxMessage> claim() {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            Instant now = Instant.now();
+            List<OutboxMessage> due = outboxRepository.lockDue(now, batchSize);
+            if (!due.isEmpty()) {
+                outboxRepository.update("availableAt = ?1 where id in ?2", now.plus(lease),
+                        due.stream().map(OutboxMessage::getId).toList());
+            }
+            return due;
+        });
+    }
+
+    private void deliver(List<OutboxMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Long> delivered = new ArrayList<>();
+        List<OutboxMessage> undelivered = new ArrayList<>();
+        for (OutboxMessage message : batch) {
+            try {
+                sender.send(message);
+                delivered.add(message.getId());
+            } catch (RuntimeException e) {
+                message.setAttempts(message.getAttempts() + 1);
+                message.setLastError(truncate(e.toString()));
+                undelivered.add(message);
+            }
+        }
+        QuarkusTransaction.requiringNew().run(() -> {
+            if (!delivered.isEmpty()) {
+                outboxRepository.delete("id in ?1", delivered);
+            }
+            undelivered.forEach(this::reschedule);
+        });
+        sent.increment(delivered.size());
+    }
+
+    private void reschedule(OutboxMessage message) {
+        if (message.getAttempts() >= maxAttempts) {
+            message.setStatus(OutboxStatus.FAILED);
+            failed.increment();
+            log.warn("Giving up on outbox message {} to {} after {} attempts: {}", message.getId(),
+                    message.getRecipient(), message.getAttempts(), message.getLastError());
+        } else {
+            message.setAvailableAt(Instant.now().plus(backoff(message.getAttempts())));
+            retried.increment();
+        }
+        outboxRepository.getEntityManager().merge(message);
+    }
+
+    //initial, twice the initial, four times... up to backoff.max
+    Duration backoff(int attempts) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 30));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    private static String truncate(String error) {
+        return error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+}
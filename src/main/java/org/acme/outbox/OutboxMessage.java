@@ -0,0 +1,61 @@
+package org.acme.outbox;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/*
+A message to deliver once the transaction that wrote it commits. Rows are written next to
+the data they belong to and removed by the OutboxDispatcher after a successful send.
+ */
+@Getter
+@Setter
+@ToString
+@Entity(name = "OutboxMessage")
+@Table(indexes = @Index(name = "idx_outbox_due", columnList = "status, availableAt"))
+@NoArgsConstructor
+public class OutboxMessage {
+
+    public static final String VERIFICATION_EMAIL = "verification-email";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    @Column(nullable = false)
+    private String type;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(length = 2048)
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    private int attempts;
+
+    //not picked before this instant, moved forward while a dispatcher holds the message and on retries
+    @Column(nullable = false)
+    private Instant availableAt;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    public OutboxMessage(String type, String recipient, String payload) {
+        this.type = type;
+        this.recipient = recipient;
+        this.payload = payload;
+        this.createdAt = Instant.now();
+        this.availableAt = this.createdAt;
+    }
+}
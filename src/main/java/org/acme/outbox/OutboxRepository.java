@@ -0,0 +1,28 @@
+package org.acme.outbox;
+
+import io.quarkus.hibernate.orm.panache.PanacheRepository;
+import io.quarkus.panache.common.Sort;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.LockModeType;
+import org.hibernate.LockOptions;
+import org.hibernate.jpa.AvailableHints;
+
+import java.time.Instant;
+import java.util.List;
+
+@ApplicationScoped
+public class OutboxRepository implements PanacheRepository<OutboxMessage> {
+
+    //rows locked by another dispatcher are skipped instead of waited on, where the database supports it
+    public List<OutboxMessage> lockDue(Instant now, int limit) {
+        return find("status = ?1 and availableAt <= ?2", Sort.by("id"), OutboxStatus.PENDING, now)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .withHint(AvailableHints.HINT_SPEC_LOCK_TIMEOUT, LockOptions.SKIP_LOCKED)
+                .page(0, limit)
+                .list();
+    }
+
+    public long countPending() {
+        return count("status", OutboxStatus.PENDING);
+    }
+}
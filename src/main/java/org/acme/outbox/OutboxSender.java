@@ -0,0 +1,9 @@
+package org.acme.outbox;
+
+/*
+Delivers one outbox message, e.g. through a mail provider. Throwing schedules a retry.
+ */
+public interface OutboxSender {
+
+    void send(OutboxMessage message);
+}
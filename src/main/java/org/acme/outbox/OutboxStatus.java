@@ -0,0 +1,7 @@
+package org.acme.outbox;
+
+public enum OutboxStatus {
+    PENDING,
+    //gave up after outbox.max-attempts, kept for inspection
+    FAILED
+}
@@ -0,0 +1,64 @@
+package org.acme.security;
+
+import io.smallrye.jwt.auth.principal.DefaultJWTCallerPrincipal;
+import io.vertx.core.http.Cookie;
+import io.vertx.core.http.HttpServerRequest;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import org.acme.exceptions.ObjectNotFoundException;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.jose4j.jwt.JwtClaims;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/*
+Holds the caller claims for the current request, so the token is read only once
+no matter how many checks run during the request.
+ */
+@RequestScoped
+public class CurrentUser {
+
+    @Inject
+    JsonWebToken jwt;
+
+    @Inject
+    HttpServerRequest request;
+
+    private UserClaims claims;
+    private UserClaims cookieClaims;
+
+    //Claims of the verified token, for endpoints that already require authentication
+    public UserClaims claims() {
+        if (Objects.isNull(claims)) {
+            claims = UserClaims.from(jwt);
+        }
+        return claims;
+    }
+
+    /*
+    Claims read straight from the jwt cookie without verification, used by logout and
+    refresh token where the token may already be expired.
+     */
+    public UserClaims cookieClaims() {
+        if (Objects.isNull(cookieClaims)) {
+            cookieClaims = Objects.nonNull(claims) ? claims : decodeCookie();
+        }
+        return cookieClaims;
+    }
+
+    private UserClaims decodeCookie() {
+        try {
+            Cookie cookie = request.getCookie("jwt");
+            String token = cookie.getValue();
+            int start = token.indexOf('.') + 1;
+            int end = token.indexOf('.', start);
+            byte[] payload = Base64.getUrlDecoder().decode(token.substring(start, end));
+            JwtClaims jwtClaims = JwtClaims.parse(new String(payload, StandardCharsets.UTF_8));
+            return UserClaims.from(new DefaultJWTCallerPrincipal(jwtClaims));
+        } catch (Exception e) {
+            throw new ObjectNotFoundException("Cookie inválido ou inexistente");
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.acme.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.security.refreshtoken.RefreshTokenRepository;
+import org.acme.security.refreshtoken.RefreshTokenRow;
+import org.acme.security.refreshtoken.RefreshTokenStore;
+import org.acme.security.verificationtoken.VerificationTokenRepository;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+Deletes the verification tokens expired for longer than their retention and the refresh tokens
+not rotated within theirs. Rows are deleted in chunks, each in its own short transaction with a
+pause between them, so a large backlog never holds many row locks or a long transaction.
+ */
+@ApplicationScoped
+@Slf4j
+public class ExpiredTokenReaper {
+
+    @Inject
+    VerificationTokenRepository verificationTokenRepository;
+
+    @Inject
+    RefreshTokenRepository refreshTokenRepository;
+
+    @Inject
+    RefreshTokenStore refreshTokenStore;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "token-reaper.chunk-size", defaultValue = "5000")
+    int chunkSize;
+
+    @ConfigProperty(name = "token-reaper.pause", defaultValue = "100ms")
+    Duration pause;
+
+    @ConfigProperty(name = "token-reaper.verification-token.retention", defaultValue = "30d")
+    Duration verificationTokenRetention;
+
+    @ConfigProperty(name = "token-reaper.refresh-token.retention", defaultValue = "30d")
+    Duration refreshTokenRetention;
+
+    @Scheduled(every = "${token-reaper.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purge() {
+        purgeVerificationTokens();
+        purgeRefreshTokens();
+    }
+
+    //tokens of a user still locked out are kept until the lockout ends
+    public long purgeVerificationTokens() {
+        Date now = new Date();
+        Date expiredBefore = Date.from(now.toInstant().minus(verificationTokenRetention));
+        return purge("verification-token", () -> {
+            List<Long> ids = verificationTokenRepository.getEntityManager()
+                    .createQuery("select id from VerificationToken where expirationTime < ?1 "
+                            + "and (timeLimit is null or timeLimit < ?2)", Long.class)
+                    .setParameter(1, expiredBefore)
+                    .setParameter(2, now)
+                    .setMaxResults(chunkSize)
+                    .getResultList();
+            if (!ids.isEmpty()) {
+                verificationTokenRepository.delete("id in ?1", ids);
+            }
+            return ids;
+        }, ids -> {
+        });
+    }
+
+    //deleted by token value, a row rewritten meanwhile by a newer login is left alone
+    public long purgeRefreshTokens() {
+        Instant issuedBefore = Instant.now().minus(refreshTokenRetention);
+        return purge("refresh-token", () -> {
+            List<RefreshTokenRow> rows = refreshTokenRepository.find("issuedAt < ?1", issuedBefore)
+                    .page(0, chunkSize)
+                    .project(RefreshTokenRow.class)
+                    .list();
+            if (!rows.isEmpty()) {
+                refreshTokenRepository.delete("token in ?1", rows.stream().map(RefreshTokenRow::token).toList());
+            }
+            return rows;
+        }, rows -> rows.forEach(row -> refreshTokenStore.evict(row.userId(), row.token())));
+    }
+
+    private <T> long purge(String table, Supplier<List<T>> deleteChunk, Consumer<List<T>> afterCommit) {
+        Timer.Sample sample = Timer.start(registry);
+        long purged = 0;
+        int deleted;
+        do {
+            List<T> chunk = QuarkusTransaction.requiringNew().call(deleteChunk::get);
+            afterCommit.accept(chunk);
+            deleted = chunk.size();
+            purged += deleted;
+        } while (deleted == chunkSize && pause());
+        sample.stop(registry.timer("token.reaper.duration", "table", table));
+        registry.counter("token.reaper.purged", "table", table).increment(purged);
+        if (purged > 0) {
+            log.info("Purged {} {} rows", purged, table);
+        }
+        return purged;
+    }
+
+    //gives other transactions room between chunks, false when interrupted by the shutdown
+    private boolean pause() {
+        try {
+            Thread.sleep(pause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.acme.security;
+
+import io.quarkus.runtime.Startup;
+import io.smallrye.jwt.algorithm.SignatureAlgorithm;
+import io.smallrye.jwt.build.JwtClaimsBuilder;
+import io.smallrye.jwt.build.JwtSignatureBuilder;
+import io.smallrye.jwt.util.KeyUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.utils.VirtualThreads;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.security.PrivateKey;
+import java.util.Optional;
+
+/*
+Signs tokens with the configured algorithm. The private key is parsed once at startup instead
+of on every login or refresh, so a missing or invalid key stops the application rather than the
+first login. The key id (if any) goes in the "kid" header so the verification side can pick
+the right key during a rotation.
+ */
+@Startup
+@ApplicationScoped
+@Slf4j
+public class JwtSigner {
+
+    @ConfigProperty(name = "jwt.signing.algorithm", defaultValue = "RS256")
+    String algorithmName;
+
+    @ConfigProperty(name = "smallrye.jwt.sign.key.location")
+    String keyLocation;
+
+    @ConfigProperty(name = "jwt.signing.key-id")
+    Optional<String> keyId;
+
+    @Inject
+    VirtualThreads virtualThreads;
+
+    private SignatureAlgorithm algorithm;
+    private PrivateKey signingKey;
+
+    @PostConstruct
+    void loadKey() {
+        algorithm = SignatureAlgorithm.fromAlgorithm(algorithmName);
+        try {
+            signingKey = KeyUtils.readPrivateKey(keyLocation, algorithm);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not read the " + algorithmName + " signing key from " + keyLocation, e);
+        }
+        log.info("JWT signing with {} key from {}", algorithm.getAlgorithm(), keyLocation);
+    }
+
+    public String sign(JwtClaimsBuilder claims) {
+        JwtSignatureBuilder signature = claims.jws();
+        //smallrye rejects an explicit EdDSA "alg", it is detected from the Ed25519 key instead
+        if (algorithm != SignatureAlgorithm.EDDSA) {
+            signature.algorithm(algorithm);
+        }
+        keyId.ifPresent(signature::keyId);
+        //signing is CPU-bound, kept off the carrier threads when requests run on virtual threads
+        return virtualThreads.compute(() -> signature.sign(signingKey));
+    }
+}
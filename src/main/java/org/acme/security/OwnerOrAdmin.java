@@ -0,0 +1,21 @@
+package org.acme.security;
+
+import jakarta.ws.rs.NameBinding;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*
+Allows the call only when the caller is the user identified by the given path parameter,
+or an admin. Checked by OwnerOrAdminFilter before the resource method runs.
+ */
+@NameBinding
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OwnerOrAdmin {
+
+    //name of the path parameter holding the user id
+    String value() default "id";
+}
@@ -0,0 +1,59 @@
+package org.acme.security;
+
+import io.quarkus.security.UnauthorizedException;
+import io.quarkus.security.identity.SecurityIdentity;
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.ext.Provider;
+import org.acme.exceptions.ObjectNotFoundException;
+
+import java.util.Objects;
+
+@Provider
+@OwnerOrAdmin
+@Priority(Priorities.AUTHORIZATION + 10)
+public class OwnerOrAdminFilter implements ContainerRequestFilter {
+
+    @Inject
+    CurrentUser currentUser;
+
+    @Inject
+    SecurityIdentity identity;
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        if (identity.isAnonymous()) {
+            throw new UnauthorizedException();
+        }
+
+        String parameter = ownerParameter();
+        String value = requestContext.getUriInfo().getPathParameters().getFirst(parameter);
+        long id;
+        try {
+            id = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ObjectNotFoundException("Invalid " + parameter);
+        }
+
+        UserClaims claims = currentUser.claims();
+        if (claims.id() != id && !claims.isAdmin()) {
+            throw new ObjectNotFoundException("User can return only your data");
+        }
+    }
+
+    private String ownerParameter() {
+        OwnerOrAdmin ownerOrAdmin = resourceInfo.getResourceMethod().getAnnotation(OwnerOrAdmin.class);
+        if (Objects.isNull(ownerOrAdmin)) {
+            ownerOrAdmin = resourceInfo.getResourceClass().getAnnotation(OwnerOrAdmin.class);
+        }
+        return ownerOrAdmin.value();
+    }
+}
@@ -0,0 +1,51 @@
+package org.acme.security;
+
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonString;
+import org.acme.exceptions.ObjectNotFoundException;
+import org.eclipse.microprofile.jwt.Claims;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import java.util.Objects;
+import java.util.Set;
+
+/*
+Typed view of the claims we put in the JWT, read once from the verified token.
+The id goes in "sub" and the username in "preferred_username": standard claims are
+resolved directly, while custom claim names cost an exception inside smallrye per lookup.
+ */
+public record UserClaims(long id, String username, Set<String> roles) {
+
+    public static final String ID = Claims.sub.name();
+    public static final String USERNAME = Claims.preferred_username.name();
+
+    public static UserClaims from(JsonWebToken jwt) {
+        Object id = jwt.getClaim(ID);
+        if (Objects.isNull(id)) {
+            throw new ObjectNotFoundException("Cookie inválido ou inexistente");
+        }
+        Set<String> groups = jwt.getGroups();
+        return new UserClaims(toLong(id), toText(jwt.getClaim(USERNAME)), Objects.isNull(groups) ? Set.of() : groups);
+    }
+
+    public boolean isAdmin() {
+        return roles.contains("admin");
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof JsonNumber number) {
+            return number.longValue();
+        }
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        return Long.parseLong(toText(value));
+    }
+
+    private static String toText(Object value) {
+        if (value instanceof JsonString text) {
+            return text.getString();
+        }
+        return Objects.isNull(value) ? null : value.toString();
+    }
+}
@@ -0,0 +1,149 @@
+package org.acme.security.password;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.exceptions.ServiceBusyException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+Runs every bcrypt hash and verification on a dedicated, bounded pool instead of the
+request worker threads. When the queue is full the caller gets a 503 straight away.
+ */
+@ApplicationScoped
+@Slf4j
+public class PasswordHasher {
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    PasswordHashingPolicy policy;
+
+    @ConfigProperty(name = "password.hashing.pool-size")
+    Optional<Integer> poolSize;
+
+    @ConfigProperty(name = "password.hashing.queue-size", defaultValue = "64")
+    int queueSize;
+
+    @ConfigProperty(name = "password.hashing.retry-after", defaultValue = "1")
+    long retryAfterSeconds;
+
+    @ConfigProperty(name = "password.hashing.bulk-in-flight")
+    Optional<Integer> bulkInFlightSize;
+
+    private int bulkInFlight;
+    private ThreadPoolExecutor executor;
+    private Timer waitTimer;
+    private Timer hashTimer;
+    private Counter rejected;
+
+    @PostConstruct
+    void init() {
+        int threads = poolSize.orElse(Runtime.getRuntime().availableProcessors());
+        bulkInFlight = Math.min(bulkInFlightSize.orElse(threads), threads + queueSize);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        registry.gauge("password.hashing.queue.depth", executor, pool -> pool.getQueue().size());
+        registry.gauge("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount);
+        waitTimer = registry.timer("password.hashing.wait");
+        hashTimer = registry.timer("password.hashing.time");
+        rejected = registry.counter("password.hashing.rejected");
+
+        log.info("Password hashing pool started with {} threads and queue size {}", threads, queueSize);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    public String hash(String password) {
+        int cost = policy.getCost();
+        return submit(() -> BCrypt.withDefaults().hashToString(cost, password.toCharArray()));
+    }
+
+    public boolean verify(String password, String hash) {
+        return submit(() -> BCrypt.verifyer().verify(password.toCharArray(), hash).verified);
+    }
+
+    public boolean needsRehash(String hash) {
+        return policy.needsRehash(hash);
+    }
+
+    /*
+    Hashes a batch in parallel on the same pool. At most bulk-in-flight hashes are queued at a
+    time, so a bulk import waits for the pool instead of being rejected, and logins still find
+    room in the queue.
+     */
+    public List<String> hashAll(List<String> passwords) {
+        int cost = policy.getCost();
+        List<Future<String>> futures = new ArrayList<>(passwords.size());
+        for (int i = 0; i < passwords.size(); i++) {
+            if (i >= bulkInFlight) {
+                await(futures.get(i - bulkInFlight));
+            }
+            String password = passwords.get(i);
+            futures.add(enqueue(() -> BCrypt.withDefaults().hashToString(cost, password.toCharArray())));
+        }
+        return futures.stream().map(this::await).toList();
+    }
+
+    private <T> T submit(Supplier<T> task) {
+        return await(enqueue(task));
+    }
+
+    private <T> Future<T> enqueue(Supplier<T> task) {
+        long enqueued = System.nanoTime();
+        try {
+            return executor.submit(() -> {
+                long started = System.nanoTime();
+                waitTimer.record(started - enqueued, TimeUnit.NANOSECONDS);
+                try {
+                    return task.get();
+                } finally {
+                    hashTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceBusyException("Too many password requests, try again later", retryAfterSeconds);
+        }
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.acme.security.password;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/*
+Decides the bcrypt cost used for new hashes. Unless a fixed cost is configured, the cost
+is calibrated at startup so one hash takes about password.hashing.target-ms on this node.
+Each extra cost point doubles the work, so one measurement at the minimum cost is enough.
+ */
+@Startup
+@ApplicationScoped
+@Slf4j
+public class PasswordHashingPolicy {
+
+    private static final String CALIBRATION_PASSWORD = "calibration-password";
+
+    @ConfigProperty(name = "password.hashing.cost")
+    Optional<Integer> fixedCost;
+
+    @ConfigProperty(name = "password.hashing.target-ms", defaultValue = "80")
+    long targetMillis;
+
+    @ConfigProperty(name = "password.hashing.min-cost", defaultValue = "10")
+    int minCost;
+
+    @ConfigProperty(name = "password.hashing.max-cost", defaultValue = "16")
+    int maxCost;
+
+    @Getter
+    private int cost;
+
+    @PostConstruct
+    void calibrate() {
+        if (fixedCost.isPresent()) {
+            cost = fixedCost.get();
+            log.info("Password hashing cost fixed at {}", cost);
+            return;
+        }
+
+        //warm up so the measurement is not dominated by class loading and JIT
+        BCrypt.withDefaults().hashToString(BCrypt.MIN_COST, CALIBRATION_PASSWORD.toCharArray());
+
+        long started = System.nanoTime();
+        BCrypt.withDefaults().hashToString(minCost, CALIBRATION_PASSWORD.toCharArray());
+        double elapsedMillis = Math.max((System.nanoTime() - started) / 1_000_000d, 0.001);
+
+        int extra = (int) Math.floor(Math.log(targetMillis / elapsedMillis) / Math.log(2));
+        cost = Math.min(maxCost, Math.max(minCost, minCost + extra));
+        log.info("Password hashing cost calibrated to {} (cost {} took {} ms, target {} ms)",
+                cost, minCost, String.format("%.1f", elapsedMillis), targetMillis);
+    }
+
+    /*
+    Only hashes weaker than this node's cost, or outside the configured bounds, are redone.
+    Nodes calibrate to different costs, rehashing to exactly ours would flip a user's hash
+    back and forth depending on which node served the login.
+     */
+    public boolean needsRehash(String hash) {
+        Integer storedCost = costOf(hash);
+        return Objects.isNull(storedCost) || storedCost < cost || storedCost < minCost || storedCost > maxCost;
+    }
+
+    static Integer costOf(String hash) {
+        //bcrypt hashes look like $2a$12$<salt+hash>
+        if (Objects.isNull(hash) || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$') {
+            return null;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
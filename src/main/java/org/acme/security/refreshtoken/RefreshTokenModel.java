@@ -7,7 +7,10 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.acme.user.UserModel;
 
+import java.time.Instant;
+
 @Entity(name = "RefreshToken")
+@Table(indexes = @Index(name = "idx_refresh_token_issued", columnList = "issuedAt"))
 @Data
 @NoArgsConstructor
 public class RefreshTokenModel {
@@ -24,4 +27,7 @@ public class RefreshTokenModel {
     @Column(nullable = false)
     private String token;
 
+    //when the row was written, rows older than token-reaper.refresh-token.retention are purged
+    private Instant issuedAt;
+
 }
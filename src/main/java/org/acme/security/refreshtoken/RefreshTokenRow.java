@@ -0,0 +1,10 @@
+package org.acme.security.refreshtoken;
+
+import io.quarkus.hibernate.orm.panache.common.ProjectedFieldName;
+
+public record RefreshTokenRow(
+        @ProjectedFieldName("userModel.id")
+        Long userId,
+        String token
+) {
+}
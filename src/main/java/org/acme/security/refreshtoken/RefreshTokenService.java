@@ -1,71 +1,36 @@
 package org.acme.security.refreshtoken;
 
-import io.quarkus.hibernate.orm.panache.PanacheQuery;
 import jakarta.enterprise.context.ApplicationScoped;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.acme.exceptions.ObjectNotFoundException;
 import org.acme.security.SecurityUtils;
-import org.acme.user.UserModel;
-import org.acme.user.UserRepository;
-
-import java.util.Objects;
-import java.util.UUID;
 
 @ApplicationScoped
 @RequiredArgsConstructor
 public class RefreshTokenService {
 
-    private final RefreshTokenRepository refreshTokenRepository;
-    private final UserRepository userRepository;
+    private final RefreshTokenStore refreshTokenStore;
     private final SecurityUtils securityUtils;
 
-    public RefreshTokenModel findByToken(String token){
-        PanacheQuery<RefreshTokenModel> refreshToken = refreshTokenRepository.find("token", token);
-        if(Objects.isNull(refreshToken.firstResult())){
-            throw new ObjectNotFoundException("Token não encontrado");
-        }
-        return refreshToken.firstResult();
-
-
-    }
-    public RefreshTokenModel findByUser(UserModel userModel){
-        PanacheQuery<RefreshTokenModel> refreshTokenByUser = refreshTokenRepository.find("userModel", userModel);
-
-        if(Objects.isNull(refreshTokenByUser.firstResult())){
-            throw new ObjectNotFoundException("Token não encontrado");
-        }
-        return refreshTokenByUser.firstResult();
+    public long findUserByToken(String token){
+        return refreshTokenStore.findUserByToken(token)
+                .orElseThrow(() -> new ObjectNotFoundException("Token não encontrado"));
     }
-    public RefreshTokenModel findByUserNonNull(UserModel userModel){
-        PanacheQuery<RefreshTokenModel> refreshTokenByUser = refreshTokenRepository.find("userModel", userModel);
 
-        return refreshTokenByUser.firstResult();
+    public String findByUser(long userId){
+        return refreshTokenStore.findByUser(userId)
+                .orElseThrow(() -> new ObjectNotFoundException("Token não encontrado"));
     }
 
-    @Transactional
-    public void createRefreshToken(String email){
-        PanacheQuery<UserModel> userByEmail = userRepository.find("email", email);
-
-        if(Objects.nonNull(findByUserNonNull(userByEmail.firstResult()))){
-            refreshTokenRepository.delete(findByUserNonNull(userByEmail.firstResult()));
-            refreshTokenRepository.flush();
-        }
-
-        RefreshTokenModel refreshTokenModel = new RefreshTokenModel();
-        refreshTokenModel.setUserModel(userByEmail.firstResult());
-        refreshTokenModel.setToken(UUID.randomUUID().toString());
-
-       refreshTokenRepository.persist(refreshTokenModel);
+    public String createRefreshToken(long userId){
+        return refreshTokenStore.rotate(userId);
     }
 
-    @Transactional
     public void deleteToken(){
-        String id = securityUtils.getIdfromDecodedCookie();
-        UserModel userModel = userRepository.findById(Long.parseLong(id));
-        RefreshTokenModel refreshTokenModel = findByUser(userModel);
-
-        refreshTokenRepository.delete(refreshTokenModel);
+        long id = securityUtils.getIdfromDecodedCookie();
 
+        if(!refreshTokenStore.remove(id)){
+            throw new ObjectNotFoundException("Token não encontrado");
+        }
     }
 }
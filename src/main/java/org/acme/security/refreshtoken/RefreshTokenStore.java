@@ -0,0 +1,23 @@
+package org.acme.security.refreshtoken;
+
+import java.util.Optional;
+
+/*
+Keeps the active refresh token of each user. Implementations decide when and how the
+tokens reach the RefreshToken table.
+ */
+public interface RefreshTokenStore {
+
+    //Replaces the token of the user with a new one and returns it
+    String rotate(long userId);
+
+    Optional<String> findByUser(long userId);
+
+    Optional<Long> findUserByToken(String token);
+
+    //Returns false when the user had no token
+    boolean remove(long userId);
+
+    //Forgets the token of the user if it is still the given one, for rows already deleted from the table
+    void evict(long userId, String token);
+}
@@ -0,0 +1,150 @@
+package org.acme.security.refreshtoken;
+
+import io.quarkus.arc.DefaultBean;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.user.UserModel;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/*
+Keeps the active tokens in memory, so login and logout never wait on refresh token SQL.
+Changes are coalesced per user and written to the RefreshToken table in batches by a
+scheduled flush; on startup the maps are loaded back from the table.
+ */
+@DefaultBean
+@ApplicationScoped
+@Slf4j
+public class WriteBehindRefreshTokenStore implements RefreshTokenStore {
+
+    private final ConcurrentMap<Long, String> tokensByUser = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> usersByToken = new ConcurrentHashMap<>();
+    //latest change per user not yet written, an empty value means the row must be deleted
+    private final ConcurrentMap<Long, Optional<String>> pending = new ConcurrentHashMap<>();
+
+    @Inject
+    RefreshTokenRepository refreshTokenRepository;
+
+    @ConfigProperty(name = "refresh-token.batch-size", defaultValue = "500")
+    int batchSize;
+
+    void warmUp(@Observes StartupEvent event) {
+        QuarkusTransaction.requiringNew().run(() -> {
+            try (Stream<RefreshTokenRow> rows = refreshTokenRepository.findAll().project(RefreshTokenRow.class).stream()) {
+                rows.forEach(row -> {
+                    tokensByUser.put(row.userId(), row.token());
+                    usersByToken.put(row.token(), row.userId());
+                });
+            }
+        });
+        log.info("Loaded {} refresh tokens", tokensByUser.size());
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        flush();
+    }
+
+    @Override
+    public String rotate(long userId) {
+        String token = UUID.randomUUID().toString();
+        tokensByUser.compute(userId, (id, previous) -> {
+            if (Objects.nonNull(previous)) {
+                usersByToken.remove(previous);
+            }
+            usersByToken.put(token, id);
+            pending.put(id, Optional.of(token));
+            return token;
+        });
+        return token;
+    }
+
+    @Override
+    public Optional<String> findByUser(long userId) {
+        return Optional.ofNullable(tokensByUser.get(userId));
+    }
+
+    @Override
+    public Optional<Long> findUserByToken(String token) {
+        return Optional.ofNullable(usersByToken.get(token));
+    }
+
+    @Override
+    public boolean remove(long userId) {
+        boolean[] removed = new boolean[1];
+        tokensByUser.computeIfPresent(userId, (id, previous) -> {
+            usersByToken.remove(previous);
+            pending.put(id, Optional.empty());
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public void evict(long userId, String token) {
+        tokensByUser.computeIfPresent(userId, (id, current) -> {
+            if (!current.equals(token)) {
+                return current;
+            }
+            usersByToken.remove(current);
+            //a write of the same token still queued would bring the row back
+            pending.remove(id, Optional.of(current));
+            return null;
+        });
+    }
+
+    @Scheduled(every = "${refresh-token.flush-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void flush() {
+        while (!pending.isEmpty()) {
+            Map<Long, Optional<String>> batch = new HashMap<>();
+            for (Long userId : pending.keySet()) {
+                Optional<String> change = pending.remove(userId);
+                if (Objects.nonNull(change)) {
+                    batch.put(userId, change);
+                }
+                if (batch.size() >= batchSize) {
+                    break;
+                }
+            }
+            write(batch);
+        }
+    }
+
+    private void write(Map<Long, Optional<String>> batch) {
+        try {
+            QuarkusTransaction.requiringNew().run(() -> writeRows(batch));
+        } catch (RuntimeException e) {
+            //one bad row (e.g. the user was deleted meanwhile) must not lose the whole batch
+            log.warn("Refresh token batch of {} failed, retrying one by one", batch.size(), e);
+            batch.forEach((userId, change) -> {
+                try {
+                    QuarkusTransaction.requiringNew().run(() -> writeRows(Map.of(userId, change)));
+                } catch (RuntimeException rowError) {
+                    log.warn("Dropping refresh token change for user {}", userId, rowError);
+                }
+            });
+        }
+    }
+
+    private void writeRows(Map<Long, Optional<String>> batch) {
+        refreshTokenRepository.delete("userModel.id in ?1", batch.keySet());
+        batch.forEach((userId, change) -> change.ifPresent(token -> {
+            RefreshTokenModel refreshTokenModel = new RefreshTokenModel();
+            refreshTokenModel.setUserModel(refreshTokenRepository.getEntityManager().getReference(UserModel.class, userId));
+            refreshTokenModel.setToken(token);
+            refreshTokenModel.setIssuedAt(Instant.now());
+            refreshTokenRepository.persist(refreshTokenModel);
+        }));
+    }
+}
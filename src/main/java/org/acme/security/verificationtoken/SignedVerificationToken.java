@@ -0,0 +1,11 @@
+package org.acme.security.verificationtoken;
+
+import java.time.Instant;
+
+//Claims of a signed verification token, only built from a token whose signature matched
+public record SignedVerificationToken(long userId, Instant issuedAt, Instant expiresAt) {
+
+    public boolean isExpired(Instant now) {
+        return !now.isBefore(expiresAt);
+    }
+}
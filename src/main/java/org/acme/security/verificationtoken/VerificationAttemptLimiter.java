@@ -0,0 +1,68 @@
+package org.acme.security.verificationtoken;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Counts failed checks of signed verification tokens per user in memory, the stateless
+counterpart of checkedTimes and timeLimit: after max-attempts expired checks the user is
+locked out for the lockout time. Counters are per node and lost on restart.
+ */
+@ApplicationScoped
+public class VerificationAttemptLimiter {
+
+    @ConfigProperty(name = "verification-token.max-attempts", defaultValue = "4")
+    int maxAttempts;
+
+    @ConfigProperty(name = "verification-token.lockout", defaultValue = "4m")
+    Duration lockout;
+
+    @ConfigProperty(name = "verification-token.limiter.max-entries", defaultValue = "100000")
+    int maxEntries;
+
+    private final Map<Long, Attempts> attempts = new ConcurrentHashMap<>();
+
+    private record Attempts(int failures, long lockedUntil, long lastSeen) {
+    }
+
+    //"timeout" while locked out, "abuse" when the attempt that starts the lockout is made
+    public Optional<String> check(long userId) {
+        long now = System.nanoTime();
+        String[] result = new String[1];
+        attempts.computeIfPresent(userId, (id, current) -> {
+            if (current.lockedUntil() - now > 0) {
+                result[0] = "timeout";
+                return current;
+            }
+            if (current.failures() >= maxAttempts) {
+                result[0] = "abuse";
+                return new Attempts(0, now + lockout.toNanos(), now);
+            }
+            return current;
+        });
+        return Optional.ofNullable(result[0]);
+    }
+
+    public void recordFailure(long userId) {
+        long now = System.nanoTime();
+        if (attempts.size() >= maxEntries) {
+            evictIdle(now);
+        }
+        attempts.merge(userId, new Attempts(1, now, now),
+                (current, ignored) -> new Attempts(current.failures() + 1, current.lockedUntil(), now));
+    }
+
+    public void clear(long userId) {
+        attempts.remove(userId);
+    }
+
+    //when full, users idle for longer than the lockout and not locked out are forgotten
+    private void evictIdle(long now) {
+        attempts.values().removeIf(entry -> now - entry.lastSeen() > lockout.toNanos() && entry.lockedUntil() - now <= 0);
+    }
+}
@@ -0,0 +1,9 @@
+package org.acme.security.verificationtoken;
+
+//Outcome of a stored token check: abuse, timeout, expired or valid, and the owner of the token
+public record VerificationCheck(String result, long userId) {
+
+    public boolean isValid() {
+        return "valid".equals(result);
+    }
+}
@@ -14,6 +14,10 @@ import java.util.Date;
 @Setter
 @ToString
 @Entity(name = "VerificationToken")
+@Table(indexes = {
+        @Index(name = "idx_verification_token_token", columnList = "token"),
+        @Index(name = "idx_verification_token_expiration", columnList = "expirationTime")
+})
 @NoArgsConstructor
 public class VerificationTokenModel {
 
@@ -24,6 +28,9 @@ public class VerificationTokenModel {
     private Date expirationTime;
     private Integer checkedTimes;
     private Date timeLimit;
+    //outcome of the last check, written by the same update that applies the rules
+    @Column(length = 16)
+    private String lastCheck;
 
     private static final int EXPIRATION_TIME = 1;
 
@@ -2,7 +2,56 @@ package org.acme.security.verificationtoken;
 
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.Query;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.query.NativeQuery;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 
 @ApplicationScoped
 public class VerificationTokenRepository implements PanacheRepository<VerificationTokenModel> {
+
+    /*
+    The rules are evaluated on the values the row had before the update, the first match wins:
+    too many checks starts a lockout, a running lockout is left alone, an expired token counts
+    one more check and anything else is valid. The row lock of the update serialises
+    concurrent checks of the same token.
+     */
+    private static final String CHECK = """
+            update VerificationToken set
+                lastCheck = case when coalesce(checkedTimes, 0) > :maxChecks then 'abuse'
+                    when timeLimit >= :now then 'timeout'
+                    when expirationTime <= :now then 'expired'
+                    else 'valid' end,
+                checkedTimes = case when coalesce(checkedTimes, 0) > :maxChecks then 0
+                    when timeLimit >= :now then checkedTimes
+                    when expirationTime <= :now then coalesce(checkedTimes, 0) + 1
+                    else checkedTimes end,
+                timeLimit = case when coalesce(checkedTimes, 0) > :maxChecks then :lockUntil
+                    else timeLimit end
+            where token = :token""";
+
+    @ConfigProperty(name = "quarkus.datasource.db-kind")
+    String dbKind;
+
+    //Applies the check rules and reads the outcome in one statement, empty when the token does not exist
+    public Optional<VerificationCheck> check(String token, Date now, Date lockUntil, int maxChecks) {
+        //H2 has no RETURNING, the final table of the update gives the same row
+        String sql = "postgresql".equals(dbKind)
+                ? CHECK + " returning lastCheck, user_id"
+                : "select lastCheck, user_id from final table (" + CHECK + ")";
+        Query query = getEntityManager().createNativeQuery(sql)
+                .setParameter("token", token)
+                .setParameter("now", now)
+                .setParameter("lockUntil", lockUntil)
+                .setParameter("maxChecks", maxChecks);
+        //only this table is touched, so no cache region has to be dropped
+        query.unwrap(NativeQuery.class).addSynchronizedEntityClass(VerificationTokenModel.class);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+        return rows.stream().findFirst()
+                .map(row -> new VerificationCheck((String) row[0], ((Number) row[1]).longValue()));
+    }
 }
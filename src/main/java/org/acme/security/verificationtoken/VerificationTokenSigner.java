@@ -0,0 +1,110 @@
+package org.acme.security.verificationtoken;
+
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+/*
+Stateless verification tokens: "userId.issuedAt.expiresAt.signature", the times in epoch seconds
+and the signature an HMAC-SHA256 of the rest with the server key. Checking one needs no lookup,
+so forged or stale links never reach the database. Issued only when verification-token.signed
+is on; tokens of both formats are accepted, so switching does not break links already sent.
+The attempt window is not part of the token, failed checks are counted by VerificationAttemptLimiter.
+ */
+@Startup
+@ApplicationScoped
+public class VerificationTokenSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    @ConfigProperty(name = "verification-token.signed", defaultValue = "false")
+    boolean signed;
+
+    //base64, shared by every node; required when signed is on
+    @ConfigProperty(name = "verification-token.hmac-key")
+    Optional<String> hmacKey;
+
+    @ConfigProperty(name = "verification-token.ttl", defaultValue = "1m")
+    Duration ttl;
+
+    private SecretKeySpec key;
+
+    @PostConstruct
+    void loadKey() {
+        if (signed && hmacKey.isEmpty()) {
+            //a key per node would reject links issued by the others and every link sent before a restart
+            throw new IllegalStateException("verification-token.signed is on but verification-token.hmac-key is not set");
+        }
+        byte[] bytes;
+        if (hmacKey.isPresent()) {
+            bytes = Base64.getDecoder().decode(hmacKey.get());
+        } else {
+            //nothing is signed with it, any signed link is rejected as invalid
+            bytes = new byte[32];
+            new SecureRandom().nextBytes(bytes);
+        }
+        key = new SecretKeySpec(bytes, ALGORITHM);
+    }
+
+    public boolean enabled() {
+        return signed;
+    }
+
+    //UUID tokens have no dots
+    public static boolean isSigned(String token) {
+        return token != null && token.indexOf('.') > 0;
+    }
+
+    public String sign(long userId) {
+        return sign(userId, Instant.now());
+    }
+
+    public String sign(long userId, Instant issuedAt) {
+        String claims = userId + "." + issuedAt.getEpochSecond() + "." + issuedAt.plus(ttl).getEpochSecond();
+        return claims + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(mac(claims));
+    }
+
+    //The claims of a well formed token with a valid signature, expired or not
+    public Optional<SignedVerificationToken> verify(String token) {
+        if (!isSigned(token)) {
+            return Optional.empty();
+        }
+        int end = token.lastIndexOf('.');
+        String[] claims = token.substring(0, end).split("\\.");
+        if (claims.length != 3) {
+            return Optional.empty();
+        }
+        try {
+            byte[] signature = Base64.getUrlDecoder().decode(token.substring(end + 1));
+            if (!MessageDigest.isEqual(signature, mac(token.substring(0, end)))) {
+                return Optional.empty();
+            }
+            return Optional.of(new SignedVerificationToken(Long.parseLong(claims[0]),
+                    Instant.ofEpochSecond(Long.parseLong(claims[1])), Instant.ofEpochSecond(Long.parseLong(claims[2]))));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private byte[] mac(String claims) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(claims.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package org.acme.user;
+
+public record BulkResult(
+        long affected
+) {
+}
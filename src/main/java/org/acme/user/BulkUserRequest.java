@@ -0,0 +1,17 @@
+package org.acme.user;
+
+import java.util.List;
+import java.util.Set;
+
+/*
+Users targeted by a bulk operation: the listed ids, or the users matching the same username
+and email filters as /userpaginated. enabled and roles are the values to set.
+ */
+public record BulkUserRequest(
+        List<Long> ids,
+        String username,
+        String email,
+        Boolean enabled,
+        Set<String> roles
+) {
+}
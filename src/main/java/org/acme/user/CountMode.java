@@ -0,0 +1,27 @@
+package org.acme.user;
+
+import org.acme.exceptions.ObjectNotFoundException;
+
+import java.util.Objects;
+
+/*
+How the totals of a listing are computed: exact (cached for a short time), estimated from the
+PostgreSQL planner statistics for unfiltered listings, or not at all.
+ */
+public enum CountMode {
+    EXACT,
+    ESTIMATED,
+    NONE;
+
+    public static CountMode from(String value) {
+        if (Objects.isNull(value) || value.isBlank()) {
+            return EXACT;
+        }
+        for (CountMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new ObjectNotFoundException("Invalid countMode: " + value);
+    }
+}
@@ -0,0 +1,39 @@
+package org.acme.user;
+
+import org.acme.exceptions.ObjectNotFoundException;
+
+import java.util.Objects;
+
+//Formats of the user export, one user per line in both
+public enum ExportFormat {
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private final String mediaType;
+    private final String extension;
+
+    ExportFormat(String mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    public String fileName() {
+        return "users." + extension;
+    }
+
+    public static ExportFormat from(String value) {
+        if (Objects.isNull(value) || value.isBlank()) {
+            return NDJSON;
+        }
+        for (ExportFormat format : values()) {
+            if (format.name().equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        throw new ObjectNotFoundException("Invalid format: " + value);
+    }
+}
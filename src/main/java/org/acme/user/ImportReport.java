@@ -0,0 +1,12 @@
+package org.acme.user;
+
+import java.util.List;
+
+public record ImportReport(
+        long rows,
+        long imported,
+        long elapsedMillis,
+        long rowsPerSecond,
+        List<ImportResult> results
+) {
+}
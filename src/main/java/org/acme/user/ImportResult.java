@@ -0,0 +1,11 @@
+package org.acme.user;
+
+//Outcome of one row of a bulk import, status is imported, duplicate, invalid or failed
+public record ImportResult(
+        long line,
+        String email,
+        String status,
+        Long id,
+        String message
+) {
+}
@@ -0,0 +1,203 @@
+package org.acme.user;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.panache.common.Parameters;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.exceptions.ObjectNotFoundException;
+import org.acme.security.refreshtoken.RefreshTokenStore;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/*
+Enable/disable, role change and delete for many users at once. The targets are walked by id
+in chunks of user.bulk.chunk-size, and each chunk is one transaction of set-based UPDATE and
+DELETE statements instead of loading entities. After each chunk the second level cache,
+totals, typeahead index and refresh token store are brought in line with the table.
+ */
+@ApplicationScoped
+@Slf4j
+public class UserBulkOperations {
+
+    private static final String ROLES_COLLECTION = UserModel.class.getName() + ".roles";
+
+    @Inject
+    UserRepository userRepository;
+
+    @Inject
+    RefreshTokenStore refreshTokenStore;
+
+    @Inject
+    UserTotals userTotals;
+
+    @Inject
+    UserSuggestIndex userSuggestIndex;
+
+    @Inject
+    UserEmailFilter userEmailFilter;
+
+    @ConfigProperty(name = "user.bulk.chunk-size", defaultValue = "1000")
+    int chunkSize;
+
+    //Disabling also revokes the refresh tokens, the users have to log in again
+    public BulkResult setEnabled(BulkUserRequest request) {
+        if (Objects.isNull(request.enabled())) {
+            throw new ObjectNotFoundException("enabled is required");
+        }
+        boolean enabled = request.enabled();
+        return forEachChunk(request, ids -> {
+            if (!enabled) {
+                deleteRefreshTokens(ids);
+            }
+            return userRepository.update("isEnabled = ?1, version = version + 1 where id in ?2", enabled, ids);
+        }, ids -> {
+            if (!enabled) {
+                ids.forEach(refreshTokenStore::remove);
+            }
+        });
+    }
+
+    public BulkResult setRoles(BulkUserRequest request) {
+        if (Objects.isNull(request.roles()) || request.roles().isEmpty()) {
+            throw new ObjectNotFoundException("We need one role at least");
+        }
+        return forEachChunk(request, ids -> {
+            rolesStatement("delete from USER_ROLES where UserModel_id in (:ids)")
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+            for (String role : request.roles()) {
+                rolesStatement("insert into USER_ROLES (UserModel_id, roles) "
+                                + "select id, :role from UserModel where id in (:ids)")
+                        .setParameter("role", role)
+                        .setParameter("ids", ids)
+                        .executeUpdate();
+            }
+            return userRepository.update("version = version + 1 where id in ?1", ids);
+        }, ids -> {
+        });
+    }
+
+    public BulkResult delete(BulkUserRequest request) {
+        return forEachChunk(request, ids -> {
+            EntityManager entityManager = userRepository.getEntityManager();
+            deleteRefreshTokens(ids);
+            entityManager.createQuery("delete from VerificationToken where user.id in :ids")
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+            rolesStatement("delete from USER_ROLES where UserModel_id in (:ids)")
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+            userEmailFilter.removeAfterCommit(userRepository.findEmails(ids));
+            ids.forEach(userSuggestIndex::removeAfterCommit);
+            return (int) userRepository.delete("id in ?1", ids);
+        }, ids -> ids.forEach(refreshTokenStore::remove));
+    }
+
+    //only the roles table is touched, without a query space Hibernate drops every cache region
+    @SuppressWarnings("unchecked")
+    private NativeQuery<Object> rolesStatement(String sql) {
+        return userRepository.getEntityManager()
+                .createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace("USER_ROLES");
+    }
+
+    private void deleteRefreshTokens(List<Long> ids) {
+        userRepository.getEntityManager()
+                .createQuery("delete from RefreshToken where userModel.id in :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+    }
+
+    /*
+    Runs the statements of each chunk in its own transaction. The in-memory changes that must
+    not reach the table again (refresh tokens) are made before the chunk, the others are registered
+    by the statements to be applied once the chunk commits.
+     */
+    private BulkResult forEachChunk(BulkUserRequest request, ToIntFunction<List<Long>> statements,
+            Consumer<List<Long>> memory) {
+        long affected = 0;
+        Iterator<List<Long>> chunks = chunks(request);
+        while (chunks.hasNext()) {
+            List<Long> ids = chunks.next();
+            if (ids.isEmpty()) {
+                continue;
+            }
+            memory.accept(ids);
+            affected += QuarkusTransaction.requiringNew().call(() -> statements.applyAsInt(ids));
+            evict(ids);
+        }
+        userTotals.invalidate();
+        log.info("Bulk operation affected {} users", affected);
+        return new BulkResult(affected);
+    }
+
+    private void evict(List<Long> ids) {
+        Cache cache = userRepository.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getCache();
+        for (Long id : ids) {
+            cache.evictEntityData(UserModel.class, id);
+            cache.evictCollectionData(ROLES_COLLECTION, id);
+        }
+        cache.evictDefaultQueryRegion();
+    }
+
+    //Chunks of the listed ids, or of the ids matching the filters read by keyset on id
+    private Iterator<List<Long>> chunks(BulkUserRequest request) {
+        if (Objects.nonNull(request.ids()) && !request.ids().isEmpty()) {
+            List<Long> ids = request.ids().stream().filter(Objects::nonNull).distinct().sorted().toList();
+            List<List<Long>> chunks = new ArrayList<>();
+            for (int from = 0; from < ids.size(); from += chunkSize) {
+                chunks.add(ids.subList(from, Math.min(from + chunkSize, ids.size())));
+            }
+            return chunks.iterator();
+        }
+        if (Objects.isNull(request.username()) && Objects.isNull(request.email())) {
+            throw new ObjectNotFoundException("Select the users by ids or by username/email filter");
+        }
+
+        StringBuilder query = new StringBuilder("select id from UserModel where id > :last");
+        Parameters parameters = new Parameters();
+        if (Objects.nonNull(request.username())) {
+            query.append(" and usernameLower like :username");
+            parameters.and("username", UserListingQueries.contains(request.username()));
+        }
+        if (Objects.nonNull(request.email())) {
+            query.append(" and emailLower like :email");
+            parameters.and("email", UserListingQueries.contains(request.email()));
+        }
+        query.append(" order by id");
+
+        return new Iterator<>() {
+            private long last = 0;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                return !done;
+            }
+
+            //the next chunk is read after the previous one committed, deleted users are already gone
+            @Override
+            public List<Long> next() {
+                List<Long> ids = QuarkusTransaction.requiringNew().call(() -> userRepository
+                        .find(query.toString(), parameters.and("last", last))
+                        .range(0, chunkSize - 1)
+                        .project(Long.class)
+                        .list());
+                done = ids.size() < chunkSize;
+                if (!ids.isEmpty()) {
+                    last = ids.get(ids.size() - 1);
+                }
+                return ids;
+            }
+        };
+    }
+}
@@ -9,21 +9,27 @@ import jakarta.annotation.security.RolesAllowed;
 import jakarta.transaction.Transactional;
 import jakarta.validation.Valid;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.CacheControl;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.acme.security.OwnerOrAdmin;
 import org.acme.security.SecurityUtils;
 import org.acme.security.refreshtoken.RefreshTokenService;
-import org.acme.security.verificationtoken.VerificationTokenModel;
+import org.acme.utils.EntityTags;
 import org.acme.utils.RegistrationCompleteEvent;
 import org.acme.utils.ResponseBase;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.parameters.RequestBody;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponses;
 
+import java.io.InputStream;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Stream;
@@ -43,20 +49,38 @@ public class UserController {
     private final HttpServerRequest serverRequest;
     private final UserMapper userMapper;
     private final ResponseBase responseBase;
+    private final EntityTags entityTags;
+    private final UserExporter userExporter;
+    private final UserImporter userImporter;
+    private final UserBulkOperations userBulkOperations;
+
+    @ConfigProperty(name = "user.suggest.max-limit", defaultValue = "50")
+    int maxSuggestions;
+
+    //clients may keep user data but must revalidate it with the ETag before using it
+    private static final CacheControl REVALIDATE = CacheControl.valueOf("private, no-cache");
 
 
     @GET
     @RolesAllowed({"admin","user"})
     @Path("/{id}")
+    @OwnerOrAdmin("id")
     @APIResponses(value = {
             @APIResponse(responseCode = "200", description = "Successfully retrieved"),
             @APIResponse(responseCode = "404", description = "User not found")
     })
     @Operation( description = "Returns a user as per the id,role user only can return your own data, admin can return anyone")
-    public Response getUserById(@PathParam("id") Long id){
-        securityUtils.decodeJwtDataUserFromCookie(id);
+    public Response getUserById(@PathParam("id") Long id, @Context Request request,
+                                @HeaderParam(jakarta.ws.rs.core.HttpHeaders.IF_NONE_MATCH) String ifNoneMatch){
+        //a version lookup is enough to answer a client that already has this user
+        if(Objects.nonNull(ifNoneMatch)){
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTags.ofUser(id, userService.getUserVersion(id)));
+            if(Objects.nonNull(notModified)){
+                return notModified.cacheControl(REVALIDATE).build();
+            }
+        }
         UserModel user = userService.getUserById(id);
-        return Response.ok(user).build();
+        return Response.ok(user).tag(entityTags.ofUser(user)).cacheControl(REVALIDATE).build();
     }
 
 
@@ -105,31 +129,105 @@ public class UserController {
     @GET
     @RolesAllowed("admin")
     @Path("/userpaginated")
-    @Operation(description = "Return a list of users paginated, and with filters")
+    @Operation(description = "Return a list of users paginated, and with filters, sorted by id, username or email. Sending after (empty for the first page) "
+            + "switches to cursor pagination: each response has the nextCursor to send as after. countMode exact (default, cached briefly), estimated or none "
+            + "chooses how totalItems and totalPages are computed")
     public Response getAllUsersPaginated(
             @QueryParam("size")@DefaultValue("5") int size,
             @QueryParam("page") @DefaultValue("0") int page,
             @QueryParam("sort")@DefaultValue("id") String sort,
             @QueryParam("order")@DefaultValue("Ascending") String order,
             @QueryParam("username") String username,
-            @QueryParam("email") String email){
-
-        if(Stream.of(username,email).allMatch(Objects::nonNull)){
-            return  Response.ok( userService.findByUsernameAndEmail(sort,order,page,size,username,email)
-            ).build();
-        }
-        if(Objects.nonNull(email)){
-            return  Response.ok( userService.findByEmail(sort,order,page,size,email)
-       ).build();
+            @QueryParam("email") String email,
+            @QueryParam("after") String after,
+            @QueryParam("countMode") String countMode,
+            @Context Request request){
+
+        //countMode can be exact (default), estimated or none
+        CountMode mode = CountMode.from(countMode);
+        Map<String, Object> response;
+        if(Objects.nonNull(after)){
+            response = userService.findUsersAfter(sort,order,size,username,email,after);
+        } else if(Stream.of(username,email).allMatch(Objects::nonNull)){
+            response = userService.findByUsernameAndEmail(sort,order,page,size,username,email,mode);
+        } else if(Objects.nonNull(email)){
+            response = userService.findByEmail(sort,order,page,size,email,mode);
+        } else if(Objects.nonNull(username)){
+            response = userService.findByUsername(sort,order,page,size,username,mode);
+        } else {
+            //Order can be Ascending or Descending
+            response = userService.findAllUsersSorted(sort,order,page,size,mode);
         }
-        if(Objects.nonNull(username)){
-            return  Response.ok( userService.findByUsername(sort,order,page,size,username)
-        ).build();
+
+        EntityTag tag = entityTags.ofPage(response);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if(Objects.nonNull(notModified)){
+            return notModified.cacheControl(REVALIDATE).build();
         }
-        //Order can be Ascending or Descending
-        return  Response.ok(
-                userService.findAllUsersSorted(sort,order,page,size)
-        ).build();
+        return Response.ok(response).tag(tag).cacheControl(REVALIDATE).build();
+    }
+
+
+    @GET
+    @RolesAllowed("admin")
+    @Path("/suggest")
+    @Operation(description = "Ids of the users whose username or email starts with q, for as-you-type lookup")
+    public Response suggestUsers(@QueryParam("q") String q,
+            @QueryParam("limit") @DefaultValue("10") int limit){
+        return Response.ok(userService.suggest(q, Math.min(Math.max(limit, 1), maxSuggestions))).build();
+    }
+
+
+    @GET
+    @RolesAllowed("admin")
+    @Path("/export")
+    @Produces({"application/x-ndjson", "text/csv"})
+    @Operation(description = "Stream all users as NDJSON (default) or CSV, one user per line")
+    public Response exportUsers(@QueryParam("format") String format){
+        ExportFormat exportFormat = ExportFormat.from(format);
+        return Response.ok(userExporter.export(exportFormat), exportFormat.mediaType())
+                .header("Content-Disposition", "attachment; filename=\"" + exportFormat.fileName() + "\"")
+                .build();
+    }
+
+
+    @POST
+    @RolesAllowed("admin")
+    @Path("/import")
+    @Consumes({"application/x-ndjson", "text/csv"})
+    @Operation(description = "Register users in bulk from NDJSON (default) or CSV with username, email and password, "
+            + "returns the result of every row")
+    public Response importUsers(InputStream body, @QueryParam("format") String format, @Context HttpServerRequest request){
+        return Response.ok(userImporter.importUsers(body, ExportFormat.from(format), applicationURL(request))).build();
+    }
+
+
+    @PUT
+    @RolesAllowed("admin")
+    @Path("/bulk/enabled")
+    @Operation(description = "Enable or disable the listed ids or the users matching the username/email filter, "
+            + "disabling also revokes their refresh tokens")
+    public Response bulkEnabled(BulkUserRequest request){
+        return Response.ok(userBulkOperations.setEnabled(request)).build();
+    }
+
+
+    @PUT
+    @RolesAllowed("admin")
+    @Path("/bulk/roles")
+    @Operation(description = "Replace the roles of the listed ids or the users matching the username/email filter")
+    public Response bulkRoles(BulkUserRequest request){
+        return Response.ok(userBulkOperations.setRoles(request)).build();
+    }
+
+
+    @POST
+    @RolesAllowed("admin")
+    @Path("/bulk/delete")
+    @Operation(description = "Delete the listed ids or the users matching the username/email filter, "
+            + "with their roles and tokens")
+    public Response bulkDelete(BulkUserRequest request){
+        return Response.ok(userBulkOperations.delete(request)).build();
     }
 
 
@@ -139,8 +237,9 @@ public class UserController {
     @Transactional
     @Operation(description = "Register a new user")
     public Response saveUser(@Valid @RequestBody UserDto user, @Context HttpServerRequest request){
-        userService.save2User(user);
-        event.sendVerificationToken(user.email(),applicationURL(request));
+        //the verification email goes through the outbox, nothing here waits on it
+        UserModel userModel = userService.save2User(user);
+        event.sendVerificationToken(userModel,applicationURL(request));
 
      return Response.ok().build();
 
@@ -176,18 +275,13 @@ public class UserController {
     @GET
     @Path("/resend-verificationtoken")
     @PermitAll
+    @Transactional
     public Response resendVerificationToken(@QueryParam("token") String oldToken,@Context HttpServerRequest request) {
-        VerificationTokenModel verificationToken = userService.generateNewVerificationToken(oldToken);
-        resendVerificationTokenEmail(applicationURL(request), verificationToken);
+        event.resendVerificationToken(oldToken, applicationURL(request));
 
         return responseBase.toResponse(Response.Status.OK.getStatusCode(),"New link send to your email, please ,confirm for activate your account","");
     }
 
-    private void resendVerificationTokenEmail(String applicationUrl, VerificationTokenModel verificationToken) {
-        String url = applicationUrl + "/user/verifyEmail?token=" + verificationToken.getToken();
-        log.info("Url example: {}", url);
-    }
-
     @GET
     @Path("/userinformation")
     @PermitAll
@@ -201,9 +295,9 @@ public class UserController {
     @RolesAllowed({"user","admin"})
     @Transactional
     @Path("/{id}")
+    @OwnerOrAdmin("id")
     @Operation(description = "Update basic data of the user, role user only can update your own data, admin can update any user data")
     public Response updateUser(@Valid @PathParam("id") Long id, @RequestBody UpdateUserDto userDto){
-        securityUtils.decodeJwtDataUserFromCookie(id);
         userService.update2User(userDto,id);
             return  Response.ok().build();
 
@@ -214,9 +308,9 @@ public class UserController {
     @RolesAllowed("admin")
     @Transactional
     @Path("/roles/{id}")
+    @OwnerOrAdmin("id")
     @Operation(description = "Update user status role, can be made only by admin")
     public Response updateUserRole(@PathParam("id") Long id, @RequestBody UpdateUserRole userDto){
-        securityUtils.decodeJwtDataUserFromCookie(id);
         userService.updateUserRole(userDto,id);
         return  Response.ok().build();
     }
@@ -225,9 +319,9 @@ public class UserController {
     @RolesAllowed({"user","admin"})
     @Transactional
     @Path("/password/{id}")
+    @OwnerOrAdmin("id")
     @Operation(description = "Update user password, role user can update your own password")
     public Response updateUserPassword(@PathParam("id") Long id, @RequestBody UpdatePassword userDto){
-        securityUtils.decodeJwtDataUserFromCookie(id);
         userService.updateUserPassword(userDto,id);
         return  Response.ok().build();
     }
@@ -236,9 +330,9 @@ public class UserController {
     @DELETE
    @RolesAllowed("admin")
     @Path("/{id}")
+    @OwnerOrAdmin("id")
     @Operation(description = "Delete a user from system")
     public Response deleteUser(@PathParam("id") Long id){
-        securityUtils.decodeJwtDataUserFromCookie(id);
         userService.deleteUser(id);
        return Response.noContent().build();
 
@@ -250,8 +344,8 @@ public class UserController {
     @Transactional
     @Path("/refreshtoken")
     public Response refreshToken(){
-        String id = securityUtils.getIdfromDecodedCookie();
-        UserModel userModel = userService.getUserById(Long.parseLong(id));
+        long id = securityUtils.getIdfromDecodedCookie();
+        UserModel userModel = userService.getUserById(id);
         Map<String,Object> response =  userService.newJWT(userModel);
 
         var cookie = Cookie.cookie("jwt", response.get("token").toString())
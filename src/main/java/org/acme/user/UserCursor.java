@@ -0,0 +1,43 @@
+package org.acme.user;
+
+import io.quarkus.panache.common.Sort;
+import org.acme.exceptions.ObjectNotFoundException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/*
+Position of the last user of a keyset page: the sort field and direction it was read with,
+the value of that field and the id that breaks ties. Clients get it as an opaque string.
+ */
+public record UserCursor(String sort, String order, String value, long id) {
+
+    static UserCursor after(UserSort sort, Sort.Direction order, UserRow row) {
+        String value = switch (sort) {
+            case USERNAME -> row.username();
+            case EMAIL -> row.email();
+            case ID -> String.valueOf(row.id());
+        };
+        return new UserCursor(sort.field(), order.name(), value, row.id());
+    }
+
+    public String encode() {
+        String raw = sort + "\n" + order + "\n" + id + "\n" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //The cursor must come from a page read with the same sort and order
+    public static UserCursor decode(String cursor, UserSort sort, Sort.Direction order) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", 4);
+            UserCursor decoded = new UserCursor(parts[0], parts[1], parts[3], Long.parseLong(parts[2]));
+            if (Objects.equals(decoded.sort, sort.field()) && Objects.equals(decoded.order, order.name())) {
+                return decoded;
+            }
+        } catch (RuntimeException e) {
+            //reported below as any other invalid cursor
+        }
+        throw new ObjectNotFoundException("Invalid cursor");
+    }
+}
@@ -0,0 +1,132 @@
+package org.acme.user;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.runtime.configuration.MemorySize;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.spi.ObserverMethod;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.utils.AfterCommit;
+import org.acme.utils.CountingBloomFilter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/*
+Counting Bloom filter of the registered emails, lowercased. A miss means the email is surely free,
+so registrations with new addresses skip the lookup; a hit still goes to the database. The unique
+index on email_lower stays the source of truth for concurrent registrations.
+Until the startup build is done every email is reported as a possible hit.
+ */
+@ApplicationScoped
+@Slf4j
+public class UserEmailFilter {
+
+    @Inject
+    UserRepository userRepository;
+
+    @Inject
+    AfterCommit afterCommit;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "user.email-filter.expected-entries", defaultValue = "1000000")
+    long expectedEntries;
+
+    @ConfigProperty(name = "user.email-filter.false-positive-rate", defaultValue = "0.01")
+    double falsePositiveRate;
+
+    @ConfigProperty(name = "user.email-filter.max-memory", defaultValue = "16M")
+    MemorySize maxMemory;
+
+    private final AtomicLong entries = new AtomicLong();
+    private CountingBloomFilter filter;
+    private volatile boolean ready;
+    private Counter misses;
+    private Counter hits;
+    private Counter falsePositives;
+
+    @PostConstruct
+    void init() {
+        filter = CountingBloomFilter.create(expectedEntries, falsePositiveRate, maxMemory.asLongValue());
+        registry.gauge("user.email.filter.entries", entries);
+        registry.gauge("user.email.filter.memory", filter, CountingBloomFilter::memoryBytes);
+        registry.gauge("user.email.filter.false.positive.rate", this, UserEmailFilter::currentFalsePositiveRate);
+        misses = registry.counter("user.email.filter.checks", "result", "miss");
+        hits = registry.counter("user.email.filter.checks", "result", "hit");
+        falsePositives = registry.counter("user.email.filter.checks", "result", "false-positive");
+    }
+
+    //after the @Startup beans, so the users they create are in the first build
+    void build(@Observes @Priority(ObserverMethod.DEFAULT_PRIORITY + 1) StartupEvent event) {
+        QuarkusTransaction.requiringNew().run(() -> {
+            try (Stream<String> emails = userRepository.find("select emailLower from UserModel where emailLower is not null")
+                    .project(String.class).stream()) {
+                emails.forEach(this::add);
+            }
+        });
+        ready = true;
+        log.info("Email filter built with {} emails in {} KB, {} counters and {} hashes, false positive rate {} (target {})",
+                entries.get(), filter.memoryBytes() / 1024, filter.counters(), filter.hashes(),
+                String.format("%.4f", currentFalsePositiveRate()), falsePositiveRate);
+        if (entries.get() > expectedEntries) {
+            log.warn("Email filter holds {} emails, more than user.email-filter.expected-entries={}", entries.get(), expectedEntries);
+        }
+    }
+
+    public boolean mightContain(String email) {
+        if (!ready) {
+            return true;
+        }
+        boolean hit = filter.mightContain(UserModel.normalize(email));
+        (hit ? hits : misses).increment();
+        return hit;
+    }
+
+    //a hit the database did not confirm, counted to report the real rate
+    public void falsePositive() {
+        falsePositives.increment();
+    }
+
+    public double currentFalsePositiveRate() {
+        return filter.falsePositiveRate(entries.get());
+    }
+
+    //Applied when the current transaction commits, or now when there is none
+    public void addAfterCommit(String email) {
+        afterCommit.run(() -> add(UserModel.normalize(email)));
+    }
+
+    public void removeAfterCommit(Collection<String> emails) {
+        afterCommit.run(() -> emails.forEach(email -> remove(UserModel.normalize(email))));
+    }
+
+    private void add(String email) {
+        if (Objects.isNull(email)) {
+            return;
+        }
+        filter.add(email);
+        entries.incrementAndGet();
+    }
+
+    /*
+    Removals are dropped while building: the scan may not have counted the email yet, and
+    removing an uncounted key could hide another one. Missing one only costs a false positive.
+     */
+    private void remove(String email) {
+        if (ready && Objects.nonNull(email)) {
+            filter.remove(email);
+            entries.decrementAndGet();
+        }
+    }
+}
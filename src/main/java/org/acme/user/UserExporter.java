@@ -0,0 +1,164 @@
+package org.acme.user;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.agroal.api.AgroalDataSource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/*
+Streams every user straight from a forward-only JDBC cursor to the response. Rows are read
+user.export.fetch-size at a time and written as they arrive, so only the user being written
+is in memory whatever the size of the table. The roles come from the same ordered join and
+are grouped while reading.
+ */
+@ApplicationScoped
+public class UserExporter {
+
+    private static final String QUERY = "select u.id, u.username, u.email, u.isEnabled, u.isChecked, r.roles"
+            + " from UserModel u left join USER_ROLES r on r.UserModel_id = u.id order by u.id";
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    @Inject
+    AgroalDataSource dataSource;
+
+    @ConfigProperty(name = "user.export.fetch-size", defaultValue = "1000")
+    int fetchSize;
+
+    public StreamingOutput export(ExportFormat format) {
+        return output -> {
+            try (RowWriter writer = format == ExportFormat.CSV ? new CsvWriter(output) : new NdjsonWriter(output)) {
+                stream(writer);
+            } catch (SQLException e) {
+                throw new IOException("User export failed", e);
+            }
+        };
+    }
+
+    private void stream(RowWriter writer) throws SQLException, IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            //PostgreSQL only honors the fetch size, instead of reading everything, inside a transaction
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (PreparedStatement statement = connection.prepareStatement(QUERY, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                try (ResultSet rows = statement.executeQuery()) {
+                    writeGrouped(rows, writer);
+                }
+            } finally {
+                connection.rollback();
+                //the pool does not reset these, the next borrower would get a read-only connection
+                connection.setReadOnly(false);
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void writeGrouped(ResultSet rows, RowWriter writer) throws SQLException, IOException {
+        ExportedUser current = null;
+        while (rows.next()) {
+            long id = rows.getLong(1);
+            if (Objects.isNull(current) || current.id != id) {
+                if (Objects.nonNull(current)) {
+                    writer.write(current);
+                }
+                current = new ExportedUser(id, rows.getString(2), rows.getString(3), rows.getBoolean(4),
+                        rows.getBoolean(5), new ArrayList<>());
+            }
+            String role = rows.getString(6);
+            if (Objects.nonNull(role)) {
+                current.roles.add(role);
+            }
+        }
+        if (Objects.nonNull(current)) {
+            writer.write(current);
+        }
+    }
+
+    private record ExportedUser(long id, String username, String email, boolean enabled, boolean checked,
+            List<String> roles) {
+    }
+
+    private interface RowWriter extends Closeable {
+        void write(ExportedUser user) throws IOException;
+    }
+
+    private static class NdjsonWriter implements RowWriter {
+
+        private final JsonGenerator generator;
+
+        NdjsonWriter(OutputStream output) throws IOException {
+            generator = JSON.createGenerator(output, JsonEncoding.UTF8);
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(ExportedUser user) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("id", user.id());
+            generator.writeStringField("username", user.username());
+            generator.writeStringField("email", user.email());
+            generator.writeBooleanField("enabled", user.enabled());
+            generator.writeBooleanField("checked", user.checked());
+            generator.writeArrayFieldStart("roles");
+            for (String role : user.roles()) {
+                generator.writeString(role);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        //flushed but not closed, the response stream belongs to the container
+        @Override
+        public void close() throws IOException {
+            generator.flush();
+        }
+    }
+
+    private static class CsvWriter implements RowWriter {
+
+        private final Writer writer;
+
+        CsvWriter(OutputStream output) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            writer.write("id,username,email,enabled,checked,roles\n");
+        }
+
+        @Override
+        public void write(ExportedUser user) throws IOException {
+            writer.write(user.id() + "," + escape(user.username()) + "," + escape(user.email()) + ","
+                    + user.enabled() + "," + user.checked() + "," + escape(String.join(";", user.roles())) + "\n");
+        }
+
+        private static String escape(String value) {
+            if (Objects.isNull(value)) {
+                return "";
+            }
+            if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+                return "\"" + value.replace("\"", "\"\"") + "\"";
+            }
+            return value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+    }
+}
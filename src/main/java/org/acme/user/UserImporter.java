@@ -0,0 +1,262 @@
+package org.acme.user;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.security.password.PasswordHasher;
+import org.acme.utils.RegistrationCompleteEvent;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+Bulk registration from a streamed NDJSON or CSV body. Rows are read and handled in chunks of
+user.import.chunk-size: validated, deduplicated against the file and, with one query per
+chunk, against the table. The passwords of a chunk are hashed in parallel on the password
+pool, then users, roles, verification tokens and their emails are inserted with JDBC batching
+in one transaction per chunk, the emails being sent through the outbox as on registration.
+Every row gets a result in the report.
+ */
+@ApplicationScoped
+@Slf4j
+public class UserImporter {
+
+    static final String IMPORTED = "imported";
+    static final String DUPLICATE = "duplicate";
+    static final String INVALID = "invalid";
+    static final String FAILED = "failed";
+
+    @Inject
+    UserRepository userRepository;
+
+    @Inject
+    RegistrationCompleteEvent event;
+
+    @Inject
+    PasswordHasher passwordHasher;
+
+    @Inject
+    UserTotals userTotals;
+
+    @Inject
+    UserSuggestIndex userSuggestIndex;
+
+    @Inject
+    UserEmailFilter userEmailFilter;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    Validator validator;
+
+    @ConfigProperty(name = "user.import.chunk-size", defaultValue = "500")
+    int chunkSize;
+
+    private record ParsedRow(long line, UserDto user, String error) {
+    }
+
+    //applicationUrl is the base of the verification links sent to the imported users
+    public ImportReport importUsers(InputStream body, ExportFormat format, String applicationUrl) {
+        long started = System.nanoTime();
+        List<ImportResult> results = new ArrayList<>();
+        Set<String> seenEmails = new HashSet<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            RowParser parser = format == ExportFormat.CSV ? new CsvParser(reader.readLine()) : this::parseJson;
+            List<ParsedRow> chunk = new ArrayList<>(chunkSize);
+            long line = format == ExportFormat.CSV ? 1 : 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                chunk.add(parser.parse(line, text));
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, seenEmails, results, applicationUrl);
+                    chunk.clear();
+                }
+            }
+            importChunk(chunk, seenEmails, results, applicationUrl);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long elapsedMillis = Math.max((System.nanoTime() - started) / 1_000_000, 1);
+        long imported = results.stream().filter(result -> IMPORTED.equals(result.status())).count();
+        long rowsPerSecond = results.size() * 1000L / elapsedMillis;
+        log.info("Imported {} of {} users in {} ms ({} rows/s)", imported, results.size(), elapsedMillis, rowsPerSecond);
+        return new ImportReport(results.size(), imported, elapsedMillis, rowsPerSecond, results);
+    }
+
+    private void importChunk(List<ParsedRow> chunk, Set<String> seenEmails, List<ImportResult> results, String applicationUrl) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        ImportResult[] outcome = new ImportResult[chunk.size()];
+        Map<String, Integer> candidates = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            ParsedRow row = chunk.get(i);
+            String error = Objects.nonNull(row.error()) ? row.error() : violations(row.user());
+            String email = Objects.isNull(row.user()) ? null : UserModel.normalize(row.user().email());
+            if (Objects.nonNull(error)) {
+                outcome[i] = result(row, INVALID, null, error);
+            } else if (!seenEmails.add(email)) {
+                outcome[i] = result(row, DUPLICATE, null, "Email repeated in the file");
+            } else {
+                candidates.put(email, i);
+            }
+        }
+
+        //not narrowed by UserEmailFilter, which can miss an email another instance just committed:
+        //the unique index would then fail the whole chunk
+        for (String existing : userRepository.findExistingEmails(candidates.keySet())) {
+            int i = candidates.remove(existing);
+            outcome[i] = result(chunk.get(i), DUPLICATE, null, "Email already in use");
+        }
+
+        List<ParsedRow> rows = candidates.values().stream().map(chunk::get).toList();
+        try {
+            List<String> hashes = passwordHasher.hashAll(rows.stream().map(row -> row.user().password()).toList());
+            List<UserModel> users = QuarkusTransaction.requiringNew().call(() -> insert(rows, hashes, applicationUrl));
+            int j = 0;
+            for (int i : candidates.values()) {
+                UserModel user = users.get(j++);
+                outcome[i] = result(chunk.get(i), IMPORTED, user.getId(), null);
+                userSuggestIndex.indexAfterCommit(user.getId(), user.getUsername(), user.getEmail());
+                userEmailFilter.addAfterCommit(user.getEmail());
+            }
+            userTotals.invalidate();
+        } catch (RuntimeException e) {
+            log.warn("Import of a chunk of {} users failed", rows.size(), e);
+            for (int i : candidates.values()) {
+                outcome[i] = result(chunk.get(i), FAILED, null, e.getMessage());
+            }
+        }
+        results.addAll(Arrays.asList(outcome));
+    }
+
+    //users first and then tokens, so Hibernate sends each kind of insert in JDBC batches
+    private List<UserModel> insert(List<ParsedRow> rows, List<String> hashes, String applicationUrl) {
+        //bulk rows would only push the users being read out of the second level cache
+        userRepository.getEntityManager().unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+        List<UserModel> users = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            UserDto dto = rows.get(i).user();
+            UserModel user = new UserModel();
+            user.setUsername(dto.username());
+            user.setEmail(dto.email());
+            user.setPassword(hashes.get(i));
+            user.setRoles(new HashSet<>(Set.of("user")));
+            userRepository.persist(user);
+            users.add(user);
+        }
+        event.sendVerificationTokens(users, applicationUrl);
+        userRepository.flush();
+        return users;
+    }
+
+    private String violations(UserDto user) {
+        Set<ConstraintViolation<UserDto>> violations = validator.validate(user);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(", "));
+    }
+
+    private static ImportResult result(ParsedRow row, String status, Long id, String message) {
+        return new ImportResult(row.line(), Objects.isNull(row.user()) ? null : row.user().email(), status, id, message);
+    }
+
+    private ParsedRow parseJson(long line, String text) {
+        try {
+            JsonNode node = objectMapper.readTree(text);
+            return new ParsedRow(line, new UserDto(null, text(node, "username"), text(node, "email"),
+                    text(node, "password"), true), null);
+        } catch (IOException e) {
+            return new ParsedRow(line, null, "Invalid JSON");
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return Objects.isNull(value) || value.isNull() ? null : value.asText();
+    }
+
+    private interface RowParser {
+        ParsedRow parse(long line, String text);
+    }
+
+    //Columns found by name in the header: username, email and password
+    private static class CsvParser implements RowParser {
+
+        private final int username;
+        private final int email;
+        private final int password;
+
+        CsvParser(String header) {
+            List<String> columns = Objects.isNull(header) ? List.of() : split(header.strip());
+            username = columns.indexOf("username");
+            email = columns.indexOf("email");
+            password = columns.indexOf("password");
+        }
+
+        @Override
+        public ParsedRow parse(long line, String text) {
+            if (username < 0 || email < 0 || password < 0) {
+                return new ParsedRow(line, null, "CSV header must have username, email and password");
+            }
+            List<String> values = split(text);
+            return new ParsedRow(line, new UserDto(null, value(values, username), value(values, email),
+                    value(values, password), true), null);
+        }
+
+        private static String value(List<String> values, int index) {
+            return index < values.size() ? values.get(index) : null;
+        }
+
+        //RFC 4180 fields on a single line: commas split fields, quotes allow commas and doubled quotes
+        private static List<String> split(String text) {
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        value.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+            values.add(value.toString());
+            return values;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.acme.user;
+
+import io.agroal.api.AgroalDataSource;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.panache.common.Sort;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.exceptions.ObjectNotFoundException;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/*
+Every HQL the user listing runs, built once for each (filters, sort, direction) from the
+declared UserSort fields. Requests only pick one of these strings, so Hibernate parses each
+of them once and afterwards always finds it in its query plan cache, and an unknown sort or
+order is rejected before reaching the database. All of them are parsed at startup.
+ */
+@ApplicationScoped
+@Slf4j
+public class UserListingQueries {
+
+    private static final String ROWS = "select new org.acme.user.UserRow(id, username, email, isEnabled, isChecked, version)"
+            + " from UserModel";
+
+    record Key(boolean username, boolean email, UserSort sort, Sort.Direction direction, boolean seek) {
+    }
+
+    private final Map<Key, String> pages = new HashMap<>();
+    private final String[] counts = new String[4];
+
+    @Inject
+    UserRepository userRepository;
+
+    @Inject
+    AgroalDataSource dataSource;
+
+    public UserListingQueries() {
+        for (boolean username : new boolean[]{false, true}) {
+            for (boolean email : new boolean[]{false, true}) {
+                List<String> filters = filters(username, email);
+                counts[index(username, email)] = "select count(*) from UserModel" + where(filters);
+                for (UserSort sort : UserSort.values()) {
+                    for (Sort.Direction direction : Sort.Direction.values()) {
+                        pages.put(new Key(username, email, sort, direction, false),
+                                ROWS + where(filters) + orderBy(sort, direction));
+                        List<String> seek = new ArrayList<>(filters);
+                        seek.add(seek(sort, direction));
+                        pages.put(new Key(username, email, sort, direction, true),
+                                ROWS + where(seek) + orderBy(sort, direction));
+                    }
+                }
+            }
+        }
+    }
+
+    //seek adds the keyset condition on (:afterValue, :afterId) taken from a cursor
+    public String page(boolean username, boolean email, UserSort sort, Sort.Direction direction, boolean seek) {
+        return pages.get(new Key(username, email, sort, direction, seek));
+    }
+
+    public String count(boolean username, boolean email) {
+        return counts[index(username, email)];
+    }
+
+    public Collection<String> all() {
+        List<String> all = new ArrayList<>(pages.values());
+        all.addAll(List.of(counts));
+        return all;
+    }
+
+    public static Sort.Direction direction(String order) {
+        for (Sort.Direction direction : Sort.Direction.values()) {
+            if (direction.name().equals(order)) {
+                return direction;
+            }
+        }
+        throw new ObjectNotFoundException("Invalid order: " + order);
+    }
+
+    void prepare(@Observes StartupEvent event) {
+        QuarkusTransaction.requiringNew().run(() -> all().forEach(hql -> userRepository.getEntityManager().createQuery(hql)));
+        List<UserSort> unindexed = unindexedSorts();
+        if (!unindexed.isEmpty()) {
+            log.warn("User sorts without a backing index: {}", unindexed);
+        }
+        log.info("Prepared {} user listing queries", pages.size() + counts.length);
+    }
+
+    //Sorts whose column does not lead any index of the user table
+    public List<UserSort> unindexedSorts() {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String table = metaData.storesUpperCaseIdentifiers() ? "USERMODEL" : "usermodel";
+            Set<String> leading = new HashSet<>();
+            try (ResultSet indexes = metaData.getIndexInfo(null, null, table, false, true)) {
+                while (indexes.next()) {
+                    if (indexes.getShort("ORDINAL_POSITION") == 1 && Objects.nonNull(indexes.getString("COLUMN_NAME"))) {
+                        leading.add(indexes.getString("COLUMN_NAME").toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+            return Arrays.stream(UserSort.values())
+                    .filter(sort -> !leading.contains(sort.column()))
+                    .toList();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read the indexes of the user table", e);
+        }
+    }
+
+    //Substring match on the lowercase columns, served by the trigram indexes on PostgreSQL
+    public static String contains(String value) {
+        return "%" + UserModel.normalize(value) + "%";
+    }
+
+    private static List<String> filters(boolean username, boolean email) {
+        List<String> filters = new ArrayList<>();
+        if (username) {
+            filters.add("usernameLower like :username");
+        }
+        if (email) {
+            filters.add("emailLower like :email");
+        }
+        return filters;
+    }
+
+    private static String where(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+    }
+
+    private static String seek(UserSort sort, Sort.Direction direction) {
+        String operator = direction == Sort.Direction.Ascending ? ">" : "<";
+        if (sort == UserSort.ID) {
+            return "id " + operator + " :afterId";
+        }
+        //a row value comparison is a range start on the (field, id) index, an equivalent "or" is not
+        return "(" + sort.field() + ", id) " + operator + " (:afterValue, :afterId)";
+    }
+
+    //id breaks ties so that pages, and cursors taken from them, have a stable order
+    private static String orderBy(UserSort sort, Sort.Direction direction) {
+        String keyword = direction == Sort.Direction.Ascending ? "asc" : "desc";
+        String orderBy = " order by " + sort.field() + " " + keyword;
+        return sort == UserSort.ID ? orderBy : orderBy + ", id " + keyword;
+    }
+
+    private static int index(boolean username, boolean email) {
+        return (username ? 1 : 0) | (email ? 2 : 0);
+    }
+}
@@ -1,6 +1,7 @@
 package org.acme.user;
 
-import at.favre.lib.crypto.bcrypt.BCrypt;
+import jakarta.inject.Inject;
+import org.acme.security.password.PasswordHasher;
 import org.mapstruct.*;
 
 import java.util.HashSet;
@@ -9,15 +10,19 @@ import java.util.Set;
 
 
 @Mapper(componentModel = "jakarta",nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
-public interface UserMapper {
+public abstract class UserMapper {
+
+    @Inject
+    PasswordHasher passwordHasher;
 
 
     @Mapping(target = "roles", ignore = true)
-    UserModel toUserModel(UserDto userDto);
+    @Mapping(target = "version", ignore = true)
+    public abstract UserModel toUserModel(UserDto userDto);
 
-    UserDto toUserDto(UserModel userModel);
+    public abstract UserDto toUserDto(UserModel userModel);
 
-    UpdateUserDto toUpdateUserDto(UserModel userModel);
+    public abstract UpdateUserDto toUpdateUserDto(UserModel userModel);
 
 
     @Mapping(target = "id", ignore = true)
@@ -25,7 +30,8 @@ public interface UserMapper {
     @Mapping(target = "password", ignore = true)
     @Mapping(target = "roles", ignore = true)
     @Mapping(target = "checked", ignore = true)
-    void updateUser(UpdateUserDto updateUserDto, @MappingTarget UserModel userModel);
+    @Mapping(target = "version", ignore = true)
+    public abstract void updateUser(UpdateUserDto updateUserDto, @MappingTarget UserModel userModel);
 
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "username", ignore = true)
@@ -33,7 +39,8 @@ public interface UserMapper {
     @Mapping(target = "password", ignore = true)
     @Mapping(target = "enabled", ignore = true)
     @Mapping(target = "checked", ignore = true)
-    void updateUserRole(UpdateUserRole updateUserRole, @MappingTarget UserModel userModel);
+    @Mapping(target = "version", ignore = true)
+    public abstract void updateUserRole(UpdateUserRole updateUserRole, @MappingTarget UserModel userModel);
 
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "username", ignore = true)
@@ -41,18 +48,19 @@ public interface UserMapper {
     @Mapping(target = "roles", ignore = true)
     @Mapping(target = "enabled", ignore = true)
     @Mapping(target = "checked", ignore = true)
-    void updatePassword(UpdatePassword updatePassword, @MappingTarget UserModel userModel);
+    @Mapping(target = "version", ignore = true)
+    public abstract void updatePassword(UpdatePassword updatePassword, @MappingTarget UserModel userModel);
 
     @AfterMapping
-    default void setPasswordAndRole(UserDto userDto, @MappingTarget UserModel userModel){
-        userModel.setPassword(BCrypt.withDefaults().hashToString(12,userDto.password().toCharArray()));
+    public void setPasswordAndRole(UserDto userDto, @MappingTarget UserModel userModel){
+        userModel.setPassword(passwordHasher.hash(userDto.password()));
         Set<String> roleUser = new HashSet<>();
         roleUser.add("user");
         userModel.setRoles(roleUser);
     }
     @AfterMapping
-    default void encryptUserPasswordUpdate(UpdatePassword updatePassword, @MappingTarget UserModel userModel){
-        userModel.setPassword(BCrypt.withDefaults().hashToString(12,updatePassword.password().toCharArray()));
+    public void encryptUserPasswordUpdate(UpdatePassword updatePassword, @MappingTarget UserModel userModel){
+        userModel.setPassword(passwordHasher.hash(updatePassword.password()));
     }
 
 }
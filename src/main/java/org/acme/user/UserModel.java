@@ -6,11 +6,21 @@ import lombok.AccessLevel;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.HashSet;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.Set;
 
 @Entity
+@Cacheable
+//keyset pages seek on (sort field, id)
+@Table(indexes = {
+        @Index(name = "idx_user_username_id", columnList = "username, id"),
+        @Index(name = "idx_user_email_id", columnList = "email, id")
+})
 @Data
 @NoArgsConstructor
 public class UserModel {
@@ -21,6 +31,17 @@ public class UserModel {
     String username;
     String email;
 
+    //lowercase copies for the case-insensitive search and email lookup, indexed by the migrations
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @Column(name = "username_lower")
+    String usernameLower;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @Column(name = "email_lower")
+    String emailLower;
+
 
     boolean isEnabled = true;
     boolean isChecked = false;
@@ -29,9 +50,27 @@ public class UserModel {
     @JsonIgnore
     String password;
 
+    //bumped on every change, including roles, and used as the ETag of the user
+    @Version
+    @JsonIgnore
+    @Column(columnDefinition = "bigint not null default 0")
+    long version;
+
     @ElementCollection
     @CollectionTable(name = "USER_ROLES")
     @Column(name = "roles")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private Set<String> roles = new HashSet<>();
 
+    @PrePersist
+    @PreUpdate
+    void normalize() {
+        usernameLower = normalize(username);
+        emailLower = normalize(email);
+    }
+
+    public static String normalize(String value) {
+        return Objects.isNull(value) ? null : value.toLowerCase(Locale.ROOT);
+    }
+
 }
@@ -2,8 +2,64 @@ package org.acme.user;
 
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Transactional;
+
+import java.util.*;
 
 
 @ApplicationScoped
 public class UserRepository implements PanacheRepository<UserModel> {
+
+    //User and roles in a single statement, everything the login needs to issue the token
+    public Optional<UserModel> findByEmailWithRoles(String email) {
+        return find("select u from UserModel u left join fetch u.roles where u.emailLower = ?1", UserModel.normalize(email))
+                .singleResultOptional();
+    }
+
+    @Transactional
+    public void updatePassword(Long id, String password) {
+        update("password = ?1, version = version + 1 where id = ?2", password, id);
+    }
+
+    //Roles of a whole page of users in one query, users without roles are absent from the map
+    public Map<Long, Set<String>> findRolesByUserIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Set<String>> roles = new HashMap<>();
+        getEntityManager()
+                .createQuery("select u.id, r from UserModel u join u.roles r where u.id in ?1", Object[].class)
+                .setParameter(1, ids)
+                .getResultStream()
+                .forEach(row -> roles.computeIfAbsent((Long) row[0], id -> new HashSet<>()).add((String) row[1]));
+        return roles;
+    }
+
+    //Which of the given lowercase emails are already registered
+    public Set<String> findExistingEmails(Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(find("select emailLower from UserModel where emailLower in ?1", emails)
+                .project(String.class)
+                .list());
+    }
+
+    public List<String> findEmails(Collection<Long> ids) {
+        return find("select emailLower from UserModel where id in ?1", ids)
+                .project(String.class)
+                .list();
+    }
+
+    //PostgreSQL planner estimate of the number of users, -1 while the table was never analyzed
+    public long estimatedCount() {
+        Number estimate = (Number) getEntityManager()
+                .createNativeQuery("select reltuples from pg_class where oid = to_regclass('usermodel')")
+                .getSingleResult();
+        return estimate.longValue();
+    }
+
+    public Optional<Long> findVersion(Long id) {
+        return find("select version from UserModel where id = ?1", id).project(Long.class).firstResultOptional();
+    }
 }
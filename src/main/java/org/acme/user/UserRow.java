@@ -0,0 +1,22 @@
+package org.acme.user;
+
+import io.quarkus.hibernate.orm.panache.common.ProjectedFieldName;
+
+import java.util.Set;
+
+//Columns of a user listed in a page, without the password and the roles collection
+public record UserRow(
+        Long id,
+        String username,
+        String email,
+        @ProjectedFieldName("isEnabled")
+        boolean enabled,
+        @ProjectedFieldName("isChecked")
+        boolean checked,
+        long version
+) {
+
+    public UserSummary withRoles(Set<String> roles) {
+        return new UserSummary(id, username, email, enabled, checked, roles, version);
+    }
+}
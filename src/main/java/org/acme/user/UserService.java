@@ -1,20 +1,27 @@
 package org.acme.user;
 
-import at.favre.lib.crypto.bcrypt.BCrypt;
-import io.quarkus.hibernate.orm.panache.PanacheQuery;
-import io.quarkus.panache.common.Page;
-import io.quarkus.panache.common.Parameters;
 import io.quarkus.panache.common.Sort;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.TypedQuery;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.acme.exceptions.ObjectNotFoundException;
 import org.acme.security.SecurityUtils;
+import org.acme.security.password.PasswordHasher;
+import org.acme.security.refreshtoken.RefreshTokenRepository;
 import org.acme.security.refreshtoken.RefreshTokenService;
+import org.acme.security.refreshtoken.RefreshTokenStore;
+import org.acme.security.verificationtoken.SignedVerificationToken;
+import org.acme.security.verificationtoken.VerificationCheck;
+import org.acme.security.verificationtoken.VerificationAttemptLimiter;
 import org.acme.security.verificationtoken.VerificationTokenModel;
 import org.acme.security.verificationtoken.VerificationTokenRepository;
+import org.acme.security.verificationtoken.VerificationTokenSigner;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.jpa.HibernateHints;
 
+import java.time.Instant;
 import java.util.*;
 
 @ApplicationScoped
@@ -26,9 +33,19 @@ public class UserService {
     private final UserMapper userMapper;
     private final SecurityUtils securityUtils;
     private final RefreshTokenService refreshTokenService;
+    private final RefreshTokenStore refreshTokenStore;
+    private final RefreshTokenRepository refreshTokenRepository;
     private final VerificationTokenRepository tokenRepository;
+    private final PasswordHasher passwordHasher;
+    private final UserTotals userTotals;
+    private final UserSuggestIndex userSuggestIndex;
+    private final UserEmailFilter userEmailFilter;
+    private final UserListingQueries userListingQueries;
+    private final VerificationTokenSigner verificationTokenSigner;
+    private final VerificationAttemptLimiter verificationAttemptLimiter;
 
     private static final int EXPIRATION_TIMEOUT = 4;
+    private static final int MAX_CHECKED_TIMES = 4;
    static final String UPDATE_ERROR = "Error updating user";
 
     public UserModel getUserById(long id){
@@ -38,38 +55,59 @@ public class UserService {
                 .orElseThrow(() -> new ObjectNotFoundException("User not found"));
     }
 
+    public long getUserVersion(long id){
+
+        return userRepository
+                .findVersion(id)
+                .orElseThrow(() -> new ObjectNotFoundException("User not found"));
+    }
+
     @Transactional
-    public void save2User(UserDto user) {
+    public UserModel save2User(UserDto user) {
         verifyEmailForRegister(user);
 
-            UserModel userModel = new UserModel();
-            userMapper.setPasswordAndRole(user,userModel);
-            userRepository.persistAndFlush(userMapper.toUserModel(user));
-
+            UserModel userModel = userMapper.toUserModel(user);
+            try {
+                userRepository.persistAndFlush(userModel);
+            } catch (ConstraintViolationException e) {
+                //registered meanwhile by a concurrent request, caught by the unique index
+                throw new ObjectNotFoundException("Email already in use");
+            }
+            userTotals.invalidate();
+            userSuggestIndex.indexAfterCommit(userModel.getId(), userModel.getUsername(), userModel.getEmail());
+            userEmailFilter.addAfterCommit(userModel.getEmail());
+            return userModel;
     }
 
+    //case-insensitive, cached query invalidated by Hibernate whenever a UserModel is written
     public UserModel getUserByEmail(String email) {
 
-       return userRepository.find("email", email).firstResult();
+       return userRepository.find("emailLower", UserModel.normalize(email)).withHint(HibernateHints.HINT_CACHEABLE, true).firstResult();
 
 
 
     }
 
+    //a miss of the email filter means the email is free, only possible hits are looked up
     private void verifyEmailForRegister(UserDto user) {
+        if (!userEmailFilter.mightContain(user.email())) {
+            return;
+        }
 
         if(Objects.nonNull(getUserByEmail(user.email()))){
             throw new ObjectNotFoundException("Email already in use");
         }
+        userEmailFilter.falsePositive();
     }
 
-    @Transactional
+    /*
+    Login runs one query (user with roles) and keeps no transaction open while bcrypt runs.
+    The refresh token goes to the in-memory store and is written behind, so the only
+    other statement is the password update when the stored hash has an old cost.
+     */
     public Map<String, Object> authenticate(LoginDto loginDto) {
-        UserModel user = getUserByEmail(loginDto.email());
-
-        if(Objects.isNull(user)){
-            throw new ObjectNotFoundException("User not found");
-        }
+        UserModel user = userRepository.findByEmailWithRoles(loginDto.email())
+                .orElseThrow(() -> new ObjectNotFoundException("User not found"));
 
         if(!user.isChecked()){
             throw new ObjectNotFoundException("Account not checked, verify your email");
@@ -78,26 +116,28 @@ public class UserService {
             throw new ObjectNotFoundException("Disabled account, contact the Admin");
         }
 
-        if(!BCrypt.verifyer()
-                .verify(loginDto.password().toCharArray(),
-                user.getPassword()).verified){
+        if(!passwordHasher.verify(loginDto.password(), user.getPassword())){
 
             throw new ObjectNotFoundException("Credentials invalid");
         }
 
+        //transparently move old hashes to the cost configured for this environment
+        if(passwordHasher.needsRehash(user.getPassword())){
+            user.setPassword(passwordHasher.hash(loginDto.password()));
+            userRepository.updatePassword(user.getId(), user.getPassword());
+        }
+
 
-        refreshTokenService.createRefreshToken(loginDto.email());
+        refreshTokenService.createRefreshToken(user.getId());
 
 
-        Set<String> roles2 = user.getRoles();
-        return securityUtils.encryptJwt(user, roles2);
+        return securityUtils.encryptJwt(user, user.getRoles());
 
     }
 
     public Map<String, Object> newJWT(UserModel userModel){
-            UserModel user = getUserByEmail(userModel.getEmail());
-            Set<String> roles2 = user.getRoles();
-            return securityUtils.encryptJwt(user, roles2);
+            Set<String> roles2 = userModel.getRoles();
+            return securityUtils.encryptJwt(userModel, roles2);
     }
 
 
@@ -112,7 +152,6 @@ public class UserService {
     public void updateUserPassword(UpdatePassword user, long id){
         UserModel userModel = getUserById(id);
 
-        userMapper.encryptUserPasswordUpdate(user,userModel);
         userMapper.updatePassword(user, userModel);
         userRepository.persist(userModel);
 
@@ -124,6 +163,8 @@ public class UserService {
               UserModel userModel = getUserById(id);
               userMapper.updateUser(user,userModel);
               userRepository.persist(userModel);
+              userTotals.invalidate();
+              userSuggestIndex.indexAfterCommit(id, userModel.getUsername(), userModel.getEmail());
         }catch (RuntimeException e){
             throw new ObjectNotFoundException(UPDATE_ERROR);
         }
@@ -134,59 +175,148 @@ public class UserService {
     public void deleteUser(long id) {
         try{
             UserModel userModel = getUserById(id);
+            //the row must go before the user, the store would only delete it on its next flush
+            refreshTokenStore.remove(id);
+            refreshTokenRepository.delete("userModel.id", id);
             userRepository.delete(userModel);
+            userTotals.invalidate();
+            userSuggestIndex.removeAfterCommit(id);
+            userEmailFilter.removeAfterCommit(List.of(userModel.getEmail()));
         }catch (RuntimeException e){
             throw new ObjectNotFoundException("Error deleting user");
         }
 
     }
 
-    public Map<String, Object> getPaginatedResponse(PanacheQuery<UserModel> userRepository, int page, int size) {
-        userRepository.page(Page.of(page, size));
+    public List<Long> suggest(String prefix, int limit) {
+        return userSuggestIndex.suggest(prefix, limit);
+    }
+
+    /*
+    Offset page over one of the prebuilt listing queries. The totals come from the count query
+    of the same filters, cached per filter signature by UserTotals.
+     */
+    private Map<String, Object> findPage(String sort, String order, int page, int size, String username, String email,
+            CountMode countMode) {
+        boolean byUsername = Objects.nonNull(username);
+        boolean byEmail = Objects.nonNull(email);
+        String hql = userListingQueries.page(byUsername, byEmail, UserSort.from(sort), UserListingQueries.direction(order), false);
+        List<UserRow> rows = listing(hql, UserRow.class, username, email)
+                .setFirstResult(page * size)
+                .setMaxResults(size)
+                .getResultList();
 
         Map<String, Object> response = new HashMap<>();
-        response.put("users", userRepository.stream().toList());
+        response.put("users", withRoles(rows));
         response.put("currentPage", page);
-        response.put("totalItems", userRepository.count());
-        response.put("totalPages", userRepository.pageCount());
+        userTotals.count(countMode, UserTotals.signature(username, email), () -> listing(
+                userListingQueries.count(byUsername, byEmail), Long.class, username, email).getSingleResult())
+                .ifPresent(totalItems -> {
+                    response.put("totalItems", totalItems);
+                    response.put("totalPages", (int) ((totalItems + size - 1) / size));
+                });
+
+        return response;
+    }
 
+    /*
+    Keyset page: seeks past the cursor on (sort, id) instead of skipping rows with an offset, so
+    deep pages cost the same as the first one. A blank cursor starts from the beginning, and
+    nextCursor is null on the last page. Totals are not computed in this mode.
+     */
+    public Map<String, Object> findUsersAfter(String sort, String order, int size, String username, String email,
+            String after) {
+        UserSort userSort = UserSort.from(sort);
+        Sort.Direction direction = UserListingQueries.direction(order);
+        if (size < 1) {
+            throw new ObjectNotFoundException("Invalid size");
+        }
+        boolean seek = Objects.nonNull(after) && !after.isBlank();
+        TypedQuery<UserRow> query = listing(userListingQueries.page(Objects.nonNull(username), Objects.nonNull(email),
+                userSort, direction, seek), UserRow.class, username, email);
+        if (seek) {
+            UserCursor cursor = UserCursor.decode(after, userSort, direction);
+            if (userSort != UserSort.ID) {
+                query.setParameter("afterValue", cursor.value());
+            }
+            query.setParameter("afterId", cursor.id());
+        }
+
+        //one row more than requested tells whether there is a next page
+        List<UserRow> rows = new ArrayList<>(query.setMaxResults(size + 1).getResultList());
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows.remove(size);
+            nextCursor = UserCursor.after(userSort, direction, rows.get(size - 1)).encode();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("users", withRoles(rows));
+        response.put("nextCursor", nextCursor);
         return response;
     }
 
-    public Object findAllUsersSorted(String sort, String order, int page, int size) {
-        return getPaginatedResponse(userRepository.findAll(Sort.by(sort)
-                .direction(Sort.Direction.valueOf(order))), page, size);
+    private <T> TypedQuery<T> listing(String hql, Class<T> type, String username, String email) {
+        TypedQuery<T> query = userRepository.getEntityManager().createQuery(hql, type);
+        if (Objects.nonNull(username)) {
+            query.setParameter("username", UserListingQueries.contains(username));
+        }
+        if (Objects.nonNull(email)) {
+            query.setParameter("email", UserListingQueries.contains(email));
+        }
+        return query;
+    }
+
+    /*
+    Pages are read as projections, without the password and without managing entities, and the
+    roles of the whole page come from one extra query: a page costs the same number of queries
+    whatever its size.
+     */
+    private List<UserSummary> withRoles(List<UserRow> rows) {
+        Map<Long, Set<String>> roles = userRepository.findRolesByUserIds(rows.stream().map(UserRow::id).toList());
+        return rows.stream()
+                .map(row -> row.withRoles(roles.getOrDefault(row.id(), Set.of())))
+                .toList();
+    }
+
+    public Map<String, Object> findAllUsersSorted(String sort, String order, int page, int size) {
+        return findAllUsersSorted(sort, order, page, size, CountMode.EXACT);
+    }
+
+    public Map<String, Object> findAllUsersSorted(String sort, String order, int page, int size, CountMode countMode) {
+        return findPage(sort, order, page, size, null, null, countMode);
+    }
+
+    public Map<String, Object> findByUsername(String sort, String order, int page, int size, String username) {
+        return findByUsername(sort, order, page, size, username, CountMode.EXACT);
+    }
+
+    public Map<String, Object> findByUsername(String sort, String order, int page, int size, String username,
+            CountMode countMode) {
+        return findPage(sort, order, page, size, username, null, countMode);
     }
 
-    public Object findByUsername(String sort, String order, int page, int size, String username) {
-        return getPaginatedResponse(userRepository.find(
-                "lower(username) like :username",
-                sortOrder(sort, order),
-                Parameters.with("username", "%" + username.toLowerCase() + "%")), page, size);
+    public Map<String, Object> findByEmail(String sort, String order, int page, int size, String email) {
+        return findByEmail(sort, order, page, size, email, CountMode.EXACT);
     }
 
-    public Object findByEmail(String sort, String order, int page, int size, String email) {
-        return getPaginatedResponse(userRepository.find(
-                "lower(email) like :email",
-                sortOrder(sort, order),
-                Parameters.with("email", "%" + email.toLowerCase() + "%")), page, size);
+    public Map<String, Object> findByEmail(String sort, String order, int page, int size, String email,
+            CountMode countMode) {
+        return findPage(sort, order, page, size, null, email, countMode);
     }
 
-    public Object findByUsernameAndEmail(String sort, String order, int page, int size, String username,
+    public Map<String, Object> findByUsernameAndEmail(String sort, String order, int page, int size, String username,
             String email) {
-        return getPaginatedResponse(userRepository.find(
-                "lower(username) like :username and lower(email) like :email",
-                sortOrder(sort, order),
-                Parameters.with("username", "%" + username.toLowerCase() + "%")
-                        .and("email", "%" + email.toLowerCase() + "%")),
-                page, size);
+        return findByUsernameAndEmail(sort, order, page, size, username, email, CountMode.EXACT);
     }
 
-    private Sort sortOrder(String sort, String order) {
-        return Sort.by(sort).direction(Sort.Direction.valueOf(order));
+    public Map<String, Object> findByUsernameAndEmail(String sort, String order, int page, int size, String username,
+            String email, CountMode countMode) {
+        return findPage(sort, order, page, size, username, email, countMode);
     }
 
 
+
 @Transactional
     public void saveUserVerificationToken(UserModel user, String token) {
         int times = 1;
@@ -196,38 +326,48 @@ public class UserService {
 
     @Transactional
     public String validateToken(String verificationToken) {
+        if (VerificationTokenSigner.isSigned(verificationToken)) {
+            return validateSignedToken(verificationToken);
+        }
 
-        VerificationTokenModel token = getVerificationToken(verificationToken);
-
-
-        if(Objects.isNull(token)){
-           return "invalid";
-       }
-        UserModel user = token.getUser();
+        //checked and updated in one statement, concurrent clicks on the same link queue on the row lock
+        Optional<VerificationCheck> check = tokenRepository.check(verificationToken, new Date(), getTokenTimeoutTime(), MAX_CHECKED_TIMES);
+        if (check.isEmpty()) {
+            return "invalid";
+        }
 
-       if(token.getCheckedTimes() > 4){
-           token.setCheckedTimes(0);
-           token.setTimeLimit(getTokenTimeoutTime());
-           tokenRepository.persistAndFlush(token);
+        if (check.get().isValid()) {
+            //through the entity, so the second level cache entry is updated instead of the region dropped
+            UserModel user = getUserById(check.get().userId());
+            user.setChecked(true);
+            tokenRepository.delete("token", verificationToken);
+        }
+        return check.get().result();
+    }
 
-          return "abuse";
-       }
-        Calendar calendar = Calendar.getInstance();
+    //Checked without reading anything, the only statement is the update of a valid token
+    private String validateSignedToken(String verificationToken) {
+        Optional<SignedVerificationToken> token = verificationTokenSigner.verify(verificationToken);
+        if (token.isEmpty()) {
+            return "invalid";
+        }
+        long userId = token.get().userId();
 
-       if(Objects.nonNull(token.getTimeLimit()) && ((token.getTimeLimit().getTime() - calendar.getTime().getTime()) >= 0)) {
-               return "timeout";
-       }
+        Optional<String> limited = verificationAttemptLimiter.check(userId);
+        if (limited.isPresent()) {
+            return limited.get();
+        }
 
-        if((token.getExpirationTime().getTime() - calendar.getTime().getTime()) <= 0){
-            int times = token.getCheckedTimes() + 1;
-            token.setCheckedTimes(times);
-            tokenRepository.persistAndFlush(token);
-            return  "expired";
+        if (token.get().isExpired(Instant.now())) {
+            verificationAttemptLimiter.recordFailure(userId);
+            return "expired";
         }
 
-        user.setChecked(true);
-        userRepository.persist(user);
-        tokenRepository.delete(token);
+        int checked = userRepository.update("isChecked = true, version = version + 1 where id = ?1 and isChecked = false", userId);
+        if (checked == 0) {
+            return "invalid";
+        }
+        verificationAttemptLimiter.clear(userId);
         return "valid";
     }
 
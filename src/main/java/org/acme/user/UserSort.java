@@ -0,0 +1,44 @@
+package org.acme.user;
+
+import org.acme.exceptions.ObjectNotFoundException;
+
+import java.util.Objects;
+
+/*
+Fields a user listing can be sorted by, each with the column leading the index that serves
+the sort: the primary key for id and the (field, id) indexes declared on UserModel for the
+others. The fields are never null, so they can also be used as cursors.
+ */
+public enum UserSort {
+    ID("id", "id"),
+    USERNAME("username", "username"),
+    EMAIL("email", "email");
+
+    private final String field;
+    private final String column;
+
+    UserSort(String field, String column) {
+        this.field = field;
+        this.column = column;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public String column() {
+        return column;
+    }
+
+    public static UserSort from(String value) {
+        if (Objects.isNull(value) || value.isBlank()) {
+            return ID;
+        }
+        for (UserSort sort : values()) {
+            if (sort.field.equals(value)) {
+                return sort;
+            }
+        }
+        throw new ObjectNotFoundException("Sort not supported: " + value);
+    }
+}
@@ -0,0 +1,127 @@
+package org.acme.user;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.spi.ObserverMethod;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.utils.AfterCommit;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/*
+Typeahead over usernames and email local parts. Terms are kept in a sorted map keyed by
+"term \0 id", so a prefix is a range scan that stops after the first K users: O(log n + K)
+whatever the number of users. Built at startup and changed after each committed write.
+Memory is bounded by user.suggest.max-entries terms of at most user.suggest.max-term-length chars.
+ */
+@ApplicationScoped
+@Slf4j
+public class UserSuggestIndex {
+
+    private static final char SEPARATOR = '\0';
+
+    private final ConcurrentSkipListMap<String, Long> terms = new ConcurrentSkipListMap<>();
+    private final Map<Long, List<String>> termsByUser = new ConcurrentHashMap<>();
+    private final AtomicBoolean fullReported = new AtomicBoolean();
+
+    @Inject
+    UserRepository userRepository;
+
+    @Inject
+    AfterCommit afterCommit;
+
+    @ConfigProperty(name = "user.suggest.max-entries", defaultValue = "2000000")
+    int maxEntries;
+
+    @ConfigProperty(name = "user.suggest.max-term-length", defaultValue = "64")
+    int maxTermLength;
+
+    //after the @Startup beans, so the users they create are in the first build
+    void build(@Observes @Priority(ObserverMethod.DEFAULT_PRIORITY + 1) StartupEvent event) {
+        QuarkusTransaction.requiringNew().run(() -> {
+            try (Stream<UserRow> rows = userRepository.findAll().project(UserRow.class).stream()) {
+                rows.forEach(row -> put(row.id(), row.username(), row.email()));
+            }
+        });
+        log.info("Suggest index built with {} terms for {} users", terms.size(), termsByUser.size());
+    }
+
+    //Ids of the first users, in term order, whose username or email local part starts with the prefix
+    public List<Long> suggest(String prefix, int limit) {
+        String term = normalize(prefix);
+        if (term.isEmpty()) {
+            return List.of();
+        }
+        ConcurrentNavigableMap<String, Long> range = terms.subMap(term, true, term + Character.MAX_VALUE, false);
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Long id : range.values()) {
+            ids.add(id);
+            if (ids.size() == limit) {
+                break;
+            }
+        }
+        return List.copyOf(ids);
+    }
+
+    //Applied when the current transaction commits, or now when there is none
+    public void indexAfterCommit(long id, String username, String email) {
+        afterCommit.run(() -> put(id, username, email));
+    }
+
+    public void removeAfterCommit(long id) {
+        afterCommit.run(() -> remove(id));
+    }
+
+    void put(long id, String username, String email) {
+        List<String> keys = Stream.of(normalize(username), normalize(localPart(email)))
+                .filter(term -> !term.isEmpty())
+                .distinct()
+                .map(term -> term + SEPARATOR + id)
+                .toList();
+        termsByUser.compute(id, (userId, previous) -> {
+            int replaced = Objects.isNull(previous) ? 0 : previous.size();
+            if (terms.size() - replaced + keys.size() > maxEntries) {
+                if (fullReported.compareAndSet(false, true)) {
+                    log.warn("Suggest index is full with {} terms, new users are not suggested", terms.size());
+                }
+                //a renamed user stays suggested under the previous terms
+                return previous;
+            }
+            if (Objects.nonNull(previous)) {
+                previous.forEach(terms::remove);
+            }
+            keys.forEach(key -> terms.put(key, userId));
+            return keys;
+        });
+    }
+
+    void remove(long id) {
+        List<String> keys = termsByUser.remove(id);
+        if (Objects.nonNull(keys)) {
+            keys.forEach(terms::remove);
+        }
+    }
+
+    private String localPart(String email) {
+        if (Objects.isNull(email)) {
+            return null;
+        }
+        int at = email.indexOf('@');
+        return at < 0 ? email : email.substring(0, at);
+    }
+
+    private String normalize(String value) {
+        String term = Objects.toString(UserModel.normalize(value), "").strip();
+        return term.length() > maxTermLength ? term.substring(0, maxTermLength) : term;
+    }
+}
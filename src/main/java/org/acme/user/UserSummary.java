@@ -0,0 +1,18 @@
+package org.acme.user;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Set;
+
+//Read-only view of a user in the paginated listings, serialized like UserModel
+public record UserSummary(
+        Long id,
+        String username,
+        String email,
+        boolean enabled,
+        boolean checked,
+        Set<String> roles,
+        @JsonIgnore
+        long version
+) {
+}
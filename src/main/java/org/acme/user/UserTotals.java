@@ -0,0 +1,115 @@
+package org.acme.user;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.acme.utils.AfterCommit;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+Totals of the user listings. Exact counts are kept per filter signature for user.count.ttl and
+dropped as soon as a user is created, renamed or deleted on this node, so the TTL only bounds
+how stale a count written by another node can be.
+ */
+@ApplicationScoped
+public class UserTotals {
+
+    @Inject
+    UserRepository userRepository;
+
+    @Inject
+    AfterCommit afterCommit;
+
+    @ConfigProperty(name = "user.count.ttl", defaultValue = "5s")
+    Duration ttl;
+
+    @ConfigProperty(name = "user.count.max-entries", defaultValue = "1000")
+    int maxEntries;
+
+    @ConfigProperty(name = "quarkus.datasource.db-kind")
+    String dbKind;
+
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+
+    private record CachedCount(long count, long generation, long expiresAt) {
+    }
+
+    //An empty signature means the listing is not filtered
+    public OptionalLong count(CountMode mode, String signature, LongSupplier exactCount) {
+        return switch (mode) {
+            case NONE -> OptionalLong.empty();
+            case ESTIMATED -> OptionalLong.of(signature.isEmpty()
+                    ? estimated().orElseGet(() -> exact(signature, exactCount))
+                    : exact(signature, exactCount));
+            case EXACT -> OptionalLong.of(exact(signature, exactCount));
+        };
+    }
+
+    //Key of the cached totals, the same filters always produce the same count, empty when not filtered
+    public static String signature(String username, String email) {
+        if (Objects.isNull(username) && Objects.isNull(email)) {
+            return "";
+        }
+        return "username=" + Objects.toString(UserModel.normalize(username), "")
+                + "\nemail=" + Objects.toString(UserModel.normalize(email), "");
+    }
+
+    /*
+    Bumped now, so the counts cached before the write are dropped at once, and again once the
+    transaction commits: a count read meanwhile still sees the old rows and must not be kept.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        afterCommit.run(generation::incrementAndGet);
+    }
+
+    private long exact(String signature, LongSupplier exactCount) {
+        long current = generation.get();
+        OptionalLong cached = cached(signature);
+        if (cached.isPresent()) {
+            return cached.getAsLong();
+        }
+
+        long count = exactCount.getAsLong();
+        store(signature, count, current);
+        return count;
+    }
+
+    //For callers that count asynchronously: read generation() before counting and store the result with it
+    public OptionalLong cached(String signature) {
+        CachedCount cached = counts.get(signature);
+        if (cached != null && cached.generation() == generation.get() && System.nanoTime() - cached.expiresAt() < 0) {
+            return OptionalLong.of(cached.count());
+        }
+        return OptionalLong.empty();
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    //tagged with the generation read before counting, a write meanwhile makes it stale
+    public void store(String signature, long count, long countedAt) {
+        if (counts.size() >= maxEntries) {
+            counts.clear();
+        }
+        counts.put(signature, new CachedCount(count, countedAt, System.nanoTime() + ttl.toNanos()));
+    }
+
+    //reltuples is -1 until the table has been analyzed, then the exact count is used instead
+    private OptionalLong estimated() {
+        if (!"postgresql".equals(dbKind)) {
+            return OptionalLong.empty();
+        }
+        long estimate = userRepository.estimatedCount();
+        return estimate < 0 ? OptionalLong.empty() : OptionalLong.of(estimate);
+    }
+}
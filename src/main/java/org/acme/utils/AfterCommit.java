@@ -0,0 +1,46 @@
+package org.acme.utils;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+Applies in-memory changes (caches, indexes, filters) once the transaction that wrote the rows
+commits, so a rollback never leaves them ahead of the database. Without a transaction the change
+is applied now; a transaction already marked for rollback or completing drops it.
+ */
+@ApplicationScoped
+@Slf4j
+public class AfterCommit {
+
+    @Inject
+    TransactionSynchronizationRegistry transactions;
+
+    public void run(Runnable change) {
+        int status = transactions.getTransactionStatus();
+        if (status == Status.STATUS_NO_TRANSACTION) {
+            change.run();
+            return;
+        }
+        if (status != Status.STATUS_ACTIVE) {
+            log.debug("Change not applied, the transaction is not active (status {})", status);
+            return;
+        }
+        transactions.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                //nothing to do before the commit
+            }
+
+            @Override
+            public void afterCompletion(int completion) {
+                if (completion == Status.STATUS_COMMITTED) {
+                    change.run();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,129 @@
+package org.acme.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Bloom filter with 4-bit counters instead of bits, so keys can be removed as well as added.
+mightContain is never wrong about a key that was added and not removed; it answers true for
+a key never added with about the configured false positive rate. Counters are packed sixteen
+per long and updated with CAS, so the filter is safe to use from any thread.
+ */
+public class CountingBloomFilter {
+
+    private static final int COUNTERS_PER_WORD = 16;
+    private static final long MAX_COUNT = 15;
+
+    private final AtomicLongArray words;
+    private final long counters;
+    private final int hashes;
+
+    private CountingBloomFilter(long counters, int hashes) {
+        this.counters = counters;
+        this.hashes = hashes;
+        this.words = new AtomicLongArray(Math.toIntExact((counters + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD));
+    }
+
+    //Sized for the entries and rate, but never larger than maxBytes: a capped filter has a higher rate
+    public static CountingBloomFilter create(long expectedEntries, double falsePositiveRate, long maxBytes) {
+        long entries = Math.max(1, expectedEntries);
+        double ln2 = Math.log(2);
+        long optimal = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (ln2 * ln2));
+        long counters = Math.max(COUNTERS_PER_WORD, Math.min(optimal, maxBytes * 2));
+        int hashes = (int) Math.max(1, Math.round((double) counters / entries * ln2));
+        return new CountingBloomFilter(counters, hashes);
+    }
+
+    public void add(String key) {
+        long hash = hash(key);
+        long step = step(hash);
+        for (int i = 0; i < hashes; i++) {
+            update(index(hash, step, i), 1);
+        }
+    }
+
+    //Only for keys that were added, removing anything else can hide keys that are present
+    public void remove(String key) {
+        long hash = hash(key);
+        long step = step(hash);
+        for (int i = 0; i < hashes; i++) {
+            update(index(hash, step, i), -1);
+        }
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        long step = step(hash);
+        for (int i = 0; i < hashes; i++) {
+            if (count(index(hash, step, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long memoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    public long counters() {
+        return counters;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    //false positive rate once the filter holds the given number of keys
+    public double falsePositiveRate(long entries) {
+        return Math.pow(1 - Math.exp(-(double) hashes * entries / counters), hashes);
+    }
+
+    private long count(long index) {
+        long word = words.get((int) (index / COUNTERS_PER_WORD));
+        return (word >>> shift(index)) & MAX_COUNT;
+    }
+
+    private void update(long index, int delta) {
+        int word = (int) (index / COUNTERS_PER_WORD);
+        int shift = shift(index);
+        while (true) {
+            long current = words.get(word);
+            long count = (current >>> shift) & MAX_COUNT;
+            //a saturated counter may stand for more keys than it can count, so it never goes down again
+            if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+                return;
+            }
+            if (words.compareAndSet(word, current, current + ((long) delta << shift))) {
+                return;
+            }
+        }
+    }
+
+    private static int shift(long index) {
+        return (int) (index % COUNTERS_PER_WORD) * 4;
+    }
+
+    //double hashing: the i-th counter is hash + i * step
+    private long index(long hash, long step, int i) {
+        return Math.floorMod(hash + i * step, counters);
+    }
+
+    private static long step(long hash) {
+        return mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+    }
+
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -0,0 +1,60 @@
+package org.acme.utils;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.core.EntityTag;
+import org.acme.user.UserModel;
+import org.acme.user.UserSummary;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/*
+Strong ETags for the user resources: a single user is tagged by id and version, a page by
+a hash of the ids and versions it contains plus its totals or next cursor, so no body has to be serialized
+to know whether the client copy is still valid.
+ */
+@ApplicationScoped
+public class EntityTags {
+
+    public EntityTag ofUser(long id, long version) {
+        return new EntityTag(id + "-" + version);
+    }
+
+    public EntityTag ofUser(UserModel user) {
+        return ofUser(user.getId(), user.getVersion());
+    }
+
+    public EntityTag ofPage(Map<String, Object> page) {
+        MessageDigest digest = sha256();
+        update(digest, page.get("currentPage"));
+        update(digest, page.get("totalItems"));
+        update(digest, page.get("totalPages"));
+        //a last keyset page gets a next cursor once a user is added after it, with the same rows
+        update(digest, page.get("nextCursor"));
+        if (page.get("users") instanceof List<?> users) {
+            for (Object user : users) {
+                if (user instanceof UserSummary summary) {
+                    update(digest, summary.id() + ":" + summary.version());
+                }
+            }
+        }
+        return new EntityTag(HexFormat.of().formatHex(digest.digest(), 0, 16));
+    }
+
+    private static void update(MessageDigest digest, Object value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ';');
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,41 +1,94 @@
 package org.acme.utils;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import org.acme.outbox.Outbox;
+import org.acme.exceptions.ObjectNotFoundException;
+import org.acme.outbox.OutboxMessage;
+import org.acme.security.verificationtoken.SignedVerificationToken;
+import org.acme.security.verificationtoken.VerificationTokenModel;
+import org.acme.security.verificationtoken.VerificationTokenSigner;
 import org.acme.user.UserModel;
 import org.acme.user.UserService;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
-@Slf4j
+/*
+The verification email is not sent here: it is written to the outbox in the caller's
+transaction and sent by the OutboxDispatcher after the commit.
+ */
 @RequiredArgsConstructor
 @ApplicationScoped
 public class RegistrationCompleteEvent {
 
     private final UserService userService;
+    private final Outbox outbox;
+    private final VerificationTokenSigner verificationTokenSigner;
 
 
+    @Transactional
     public void sendVerificationToken(String email,String applicationUrl) {
-        //1. Get the new registered user
-       UserModel user = userService.getUserByEmail(email);
+        sendVerificationToken(userService.getUserByEmail(email), applicationUrl);
+    }
+
+    @Transactional
+    public void sendVerificationToken(UserModel user,String applicationUrl) {
+        //a signed token carries everything needed to check it, nothing is stored
+        if (verificationTokenSigner.enabled()) {
+            queueVerificationEmail(user.getEmail(), applicationUrl, verificationTokenSigner.sign(user.getId()));
+            return;
+        }
 
-        //2. Create a verification token for the user
+        //1. Create a verification token for the user
         String verificationToken = UUID.randomUUID().toString();
 
-        //3. save the verification token for the user
+        //2. save the verification token for the user
         userService.saveUserVerificationToken(user,verificationToken);
 
-        //4 build the verification url to be sent to the user
-        String url = applicationUrl + "/user/verifyEmail?token=" + verificationToken;
-        //5. send the email
-        log.info("Url example: {}", url);
-
-
+        //3. queue the email with the verification url
+        queueVerificationEmail(user.getEmail(), applicationUrl, verificationToken);
     }
 
+    //tokens of all the users first and then their emails, so each kind of insert goes in JDBC batches
+    @Transactional
+    public void sendVerificationTokens(List<UserModel> users,String applicationUrl) {
+        if (verificationTokenSigner.enabled()) {
+            users.forEach(user -> queueVerificationEmail(user.getEmail(), applicationUrl, verificationTokenSigner.sign(user.getId())));
+            return;
+        }
+
+        List<String> verificationTokens = new ArrayList<>(users.size());
+        for (UserModel user : users) {
+            String verificationToken = UUID.randomUUID().toString();
+            userService.saveUserVerificationToken(user,verificationToken);
+            verificationTokens.add(verificationToken);
+        }
+        for (int i = 0; i < users.size(); i++) {
+            queueVerificationEmail(users.get(i).getEmail(), applicationUrl, verificationTokens.get(i));
+        }
+    }
 
+    @Transactional
+    public void resendVerificationToken(String oldToken,String applicationUrl) {
+        if (VerificationTokenSigner.isSigned(oldToken)) {
+            SignedVerificationToken token = verificationTokenSigner.verify(oldToken)
+                    .orElseThrow(() -> new ObjectNotFoundException("Invalid token"));
+            UserModel user = userService.getUserById(token.userId());
+            if (user.isChecked()) {
+                throw new ObjectNotFoundException("Account already checked");
+            }
+            queueVerificationEmail(user.getEmail(), applicationUrl, verificationTokenSigner.sign(user.getId()));
+            return;
+        }
+        VerificationTokenModel verificationToken = userService.generateNewVerificationToken(oldToken);
+        queueVerificationEmail(verificationToken.getUser().getEmail(), applicationUrl, verificationToken.getToken());
+    }
 
-
-
+    private void queueVerificationEmail(String email, String applicationUrl, String verificationToken) {
+        String url = applicationUrl + "/user/verifyEmail?token=" + verificationToken;
+        outbox.enqueue(OutboxMessage.VERIFICATION_EMAIL, email, url);
+    }
 }
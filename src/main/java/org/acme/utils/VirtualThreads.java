@@ -0,0 +1,127 @@
+package org.acme.utils;
+
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.Router;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.exceptions.ServiceBusyException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+Runs the blocking /api/user endpoints on virtual threads when http.virtual-threads.enabled is
+set on Java 21 (see the java21 Maven profile), so a request waiting on the database no longer
+holds one of the fixed worker threads. The RESTEasy handler serves a request inline when it is
+already off the event loop, so moving to a virtual thread before it is enough. The request is
+paused before the hand-off: RESTEasy only installs its body handlers once it runs, and chunks
+arriving in between would otherwise be dropped.
+CPU-bound work must not occupy the few carrier threads: bcrypt stays on PasswordHasher, and
+compute() runs the rest (JWT signing) on a bounded platform pool.
+ */
+@ApplicationScoped
+@Slf4j
+public class VirtualThreads {
+
+    @ConfigProperty(name = "http.virtual-threads.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @ConfigProperty(name = "http.virtual-threads.path", defaultValue = "/api/user/*")
+    String path;
+
+    @ConfigProperty(name = "http.virtual-threads.compute-pool-size")
+    Optional<Integer> computePoolSize;
+
+    @ConfigProperty(name = "http.virtual-threads.compute-queue-size", defaultValue = "256")
+    int computeQueueSize;
+
+    private ExecutorService requests;
+    private ExecutorService compute;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            //Java 21 API, looked up so that the default build still targets Java 17
+            requests = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("http.virtual-threads.enabled is set but Java {} has no virtual threads, using the worker pool",
+                    Runtime.version().feature());
+            return;
+        }
+        int threads = computePoolSize.orElse(Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadCount = new AtomicInteger();
+        compute = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(computeQueueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "compute-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("Requests to {} run on virtual threads, CPU-bound work on {} platform threads", path, threads);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (active()) {
+            requests.shutdown();
+            compute.shutdown();
+        }
+    }
+
+    public boolean active() {
+        return Objects.nonNull(requests);
+    }
+
+    void route(@Observes Router router) {
+        if (active()) {
+            router.route(path).handler(context -> {
+                HttpServerRequest request = context.request();
+                request.pause();
+                requests.execute(() -> {
+                    try {
+                        context.next();
+                    } finally {
+                        //RESTEasy reads the body on demand, whatever it left unread is drained
+                        request.resume();
+                    }
+                });
+            });
+        }
+    }
+
+    //Runs the task on the bounded platform pool when requests are on virtual threads, inline otherwise
+    public <T> T compute(Supplier<T> task) {
+        if (!active()) {
+            return task.get();
+        }
+        Future<T> future;
+        try {
+            future = compute.submit(task::get);
+        } catch (RejectedExecutionException e) {
+            throw new ServiceBusyException("Too many requests, try again later", 1);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the compute pool", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
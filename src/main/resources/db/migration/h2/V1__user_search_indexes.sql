@@ -0,0 +1,6 @@
+-- H2 has no trigram indexes, plain indexes on the lowercase columns keep the same queries working in tests.
+update UserModel set username_lower = lower(username), email_lower = lower(email)
+where username_lower is null or email_lower is null;
+
+create index if not exists idx_user_username_lower on UserModel (username_lower);
+create index if not exists idx_user_email_lower on UserModel (email_lower);
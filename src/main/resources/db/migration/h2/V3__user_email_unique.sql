@@ -0,0 +1,4 @@
+-- Emails are unique regardless of case: concurrent registrations of the same address are stopped here.
+-- Replaces the plain index on the lowercase email.
+create unique index if not exists uk_user_email_lower on UserModel (email_lower);
+drop index if exists idx_user_email_lower;
@@ -0,0 +1,10 @@
+-- Case-insensitive substring search on users served by trigram indexes.
+-- UserModel keeps the lowercase columns up to date, rows written before they existed are filled here.
+create extension if not exists pg_trgm;
+
+update UserModel set username_lower = lower(username), email_lower = lower(email)
+where username_lower is null or email_lower is null;
+
+create index if not exists idx_user_username_lower_trgm on UserModel using gin (username_lower gin_trgm_ops);
+create index if not exists idx_user_email_lower_trgm on UserModel using gin (email_lower gin_trgm_ops);
+create index if not exists idx_user_email_lower on UserModel (email_lower);
@@ -0,0 +1,2 @@
+-- Refresh tokens written before issuedAt existed count as issued now, so the reaper does not purge them at once.
+update RefreshToken set issuedAt = current_timestamp where issuedAt is null;
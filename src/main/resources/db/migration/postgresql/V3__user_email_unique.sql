@@ -0,0 +1,21 @@
+-- Emails are unique regardless of case: concurrent registrations of the same address are stopped here.
+-- Replaces the plain index on the lowercase email.
+-- Accounts registered before the lowercase checks may share an address in different cases: they are
+-- reported instead of failing on the index, and have to be merged or renamed before migrating again.
+do $$
+declare
+    duplicates text;
+begin
+    select string_agg(email_lower || ' (ids ' || ids || ')', ', ')
+    into duplicates
+    from (select email_lower, string_agg(id::text, ', ' order by id) as ids
+          from UserModel
+          group by email_lower
+          having count(*) > 1) duplicate;
+    if duplicates is not null then
+        raise exception 'Emails used by more than one user regardless of case: %', duplicates;
+    end if;
+end $$;
+
+create unique index if not exists uk_user_email_lower on UserModel (email_lower);
+drop index if exists idx_user_email_lower;
@@ -0,0 +1,163 @@
+package org.acme.user;
+
+import io.quarkus.panache.common.Sort;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.*;
+
+/*
+Reads of the user table on the reactive PostgreSQL client, mirroring UserRepository and the
+UserListingQueries: the SQL of every (filters, sort, direction) is built once, and a page is
+two statements, the rows and the roles of all of them.
+ */
+@ApplicationScoped
+public class ReactiveUserRepository {
+
+    private static final String ROWS = "select id, username, email, isEnabled, isChecked, version from UserModel";
+    private static final String ROLES = "select UserModel_id, roles from USER_ROLES where UserModel_id = any($1)";
+
+    private final Map<UserListingQueries.Key, String> pages = new HashMap<>();
+    private final String[] counts = new String[4];
+
+    @Inject
+    PgPool client;
+
+    public ReactiveUserRepository() {
+        for (boolean username : new boolean[]{false, true}) {
+            for (boolean email : new boolean[]{false, true}) {
+                counts[index(username, email)] = "select count(*) from UserModel" + where(filters(username, email));
+                for (UserSort sort : UserSort.values()) {
+                    for (Sort.Direction direction : Sort.Direction.values()) {
+                        pages.put(new UserListingQueries.Key(username, email, sort, direction, false),
+                                page(username, email, sort, direction, false));
+                        pages.put(new UserListingQueries.Key(username, email, sort, direction, true),
+                                page(username, email, sort, direction, true));
+                    }
+                }
+            }
+        }
+    }
+
+    public Uni<Optional<UserSummary>> findById(long id) {
+        return client.preparedQuery(ROWS + " where id = $1").execute(Tuple.of(id))
+                .map(ReactiveUserRepository::toRows)
+                .flatMap(this::withRoles)
+                .map(users -> users.stream().findFirst());
+    }
+
+    public Uni<Optional<Long>> findVersion(long id) {
+        return client.preparedQuery("select version from UserModel where id = $1").execute(Tuple.of(id))
+                .map(rows -> rows.size() == 0 ? Optional.empty() : Optional.of(rows.iterator().next().getLong(0)));
+    }
+
+    //after is null for offset pages and for the first keyset page
+    public Uni<List<UserSummary>> findPage(String username, String email, UserSort sort, Sort.Direction direction,
+            UserCursor after, int limit, int offset) {
+        boolean seek = Objects.nonNull(after);
+        Tuple parameters = filters(username, email);
+        if (seek) {
+            if (sort != UserSort.ID) {
+                parameters.addString(after.value());
+            }
+            parameters.addLong(after.id());
+        }
+        parameters.addInteger(limit).addInteger(offset);
+        String sql = pages.get(new UserListingQueries.Key(Objects.nonNull(username), Objects.nonNull(email), sort,
+                direction, seek));
+        return client.preparedQuery(sql).execute(parameters)
+                .map(ReactiveUserRepository::toRows)
+                .flatMap(this::withRoles);
+    }
+
+    public Uni<Long> count(String username, String email) {
+        return client.preparedQuery(counts[index(Objects.nonNull(username), Objects.nonNull(email))])
+                .execute(filters(username, email))
+                .map(rows -> rows.iterator().next().getLong(0));
+    }
+
+    //reltuples is -1 until the table has been analyzed
+    public Uni<Long> estimatedCount() {
+        return client.query("select reltuples from pg_class where oid = to_regclass('usermodel')").execute()
+                .map(rows -> rows.size() == 0 ? -1L : rows.iterator().next().getDouble(0).longValue());
+    }
+
+    private Uni<List<UserSummary>> withRoles(List<UserRow> rows) {
+        if (rows.isEmpty()) {
+            return Uni.createFrom().item(List.of());
+        }
+        Long[] ids = rows.stream().map(UserRow::id).toArray(Long[]::new);
+        return client.preparedQuery(ROLES).execute(Tuple.of(ids)).map(roleRows -> {
+            Map<Long, Set<String>> roles = new HashMap<>();
+            for (Row row : roleRows) {
+                roles.computeIfAbsent(row.getLong(0), id -> new HashSet<>()).add(row.getString(1));
+            }
+            return rows.stream()
+                    .map(row -> row.withRoles(roles.getOrDefault(row.id(), Set.of())))
+                    .toList();
+        });
+    }
+
+    private static List<UserRow> toRows(RowSet<Row> rows) {
+        List<UserRow> users = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            users.add(new UserRow(row.getLong(0), row.getString(1), row.getString(2), row.getBoolean(3),
+                    row.getBoolean(4), row.getLong(5)));
+        }
+        return users;
+    }
+
+    private static Tuple filters(String username, String email) {
+        Tuple parameters = Tuple.tuple();
+        if (Objects.nonNull(username)) {
+            parameters.addString(UserListingQueries.contains(username));
+        }
+        if (Objects.nonNull(email)) {
+            parameters.addString(UserListingQueries.contains(email));
+        }
+        return parameters;
+    }
+
+    //the placeholders are numbered in the order findPage adds the parameters
+    private static String page(boolean username, boolean email, UserSort sort, Sort.Direction direction, boolean seek) {
+        List<String> conditions = filters(username, email);
+        int parameter = conditions.size();
+        if (seek) {
+            String operator = direction == Sort.Direction.Ascending ? ">" : "<";
+            if (sort == UserSort.ID) {
+                conditions.add("id " + operator + " $" + ++parameter);
+            } else {
+                String value = "$" + ++parameter;
+                String id = "$" + ++parameter;
+                conditions.add("(" + sort.column() + ", id) " + operator + " (" + value + ", " + id + ")");
+            }
+        }
+        String keyword = direction == Sort.Direction.Ascending ? "asc" : "desc";
+        String orderBy = " order by " + sort.column() + " " + keyword + (sort == UserSort.ID ? "" : ", id " + keyword);
+        return ROWS + where(conditions) + orderBy + " limit $" + ++parameter + " offset $" + ++parameter;
+    }
+
+    private static List<String> filters(boolean username, boolean email) {
+        List<String> filters = new ArrayList<>();
+        if (username) {
+            filters.add("username_lower like $" + (filters.size() + 1));
+        }
+        if (email) {
+            filters.add("email_lower like $" + (filters.size() + 1));
+        }
+        return filters;
+    }
+
+    private static String where(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+    }
+
+    private static int index(boolean username, boolean email) {
+        return (username ? 1 : 0) | (email ? 2 : 0);
+    }
+}
@@ -0,0 +1,268 @@
+package org.acme.user;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.panache.common.Sort;
+import io.quarkus.security.AuthenticationFailedException;
+import io.quarkus.security.ForbiddenException;
+import io.quarkus.security.UnauthorizedException;
+import io.quarkus.security.identity.IdentityProviderManager;
+import io.quarkus.vertx.http.runtime.security.QuarkusHttpUser;
+import io.quarkus.vertx.web.Param;
+import io.quarkus.vertx.web.Route;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.EntityTag;
+import lombok.extern.slf4j.Slf4j;
+import org.acme.exceptions.ObjectNotFoundException;
+import org.acme.exceptions.StandardMsg;
+import org.acme.security.UserClaims;
+import org.acme.utils.EntityTags;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import java.util.*;
+
+/*
+The read-heavy endpoints of the user API served on the Vert.x event loop with the reactive
+PostgreSQL client, so a request waiting on the database holds no worker thread. Only built
+with the reactive Maven profile: the routes answer before the RESTEasy resources of the same
+paths, with the same responses and ETags, and every other endpoint stays on UserController.
+ */
+@ApplicationScoped
+@Slf4j
+public class ReactiveUserRoutes {
+
+    private static final String REVALIDATE = "private, no-cache";
+
+    @Inject
+    ReactiveUserRepository repository;
+
+    @Inject
+    UserTotals userTotals;
+
+    @Inject
+    EntityTags entityTags;
+
+    @Inject
+    IdentityProviderManager identityProviderManager;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Route(regex = "/api/user/(?<id>\\d+)", methods = Route.HttpMethod.GET)
+    void getUserById(@Param("id") String id, RoutingContext context) {
+        authorize(context, "admin", "user")
+                .flatMap(claims -> {
+                    long userId = Long.parseLong(id);
+                    if (claims.id() != userId && !claims.isAdmin()) {
+                        return Uni.createFrom().<Optional<UserSummary>>failure(new ObjectNotFoundException("User can return only your data"));
+                    }
+                    return findUnlessNotModified(context, userId);
+                })
+                .subscribe().with(user -> user.ifPresentOrElse(
+                        found -> send(context, found, entityTags.ofUser(found.id(), found.version())),
+                        () -> sendNotModified(context)), failure -> fail(context, failure));
+    }
+
+    //a version lookup is enough to answer a client that already has this user
+    private Uni<Optional<UserSummary>> findUnlessNotModified(RoutingContext context, long userId) {
+        if (Objects.isNull(context.request().getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            return find(userId);
+        }
+        return repository.findVersion(userId)
+                .flatMap(version -> {
+                    if (version.isEmpty()) {
+                        return Uni.createFrom().failure(new ObjectNotFoundException("User not found"));
+                    }
+                    if (notModified(context, entityTags.ofUser(userId, version.get()))) {
+                        return Uni.createFrom().item(Optional.<UserSummary>empty());
+                    }
+                    return find(userId);
+                });
+    }
+
+    private Uni<Optional<UserSummary>> find(long userId) {
+        return repository.findById(userId)
+                .map(user -> Optional.of(user.orElseThrow(() -> new ObjectNotFoundException("User not found"))));
+    }
+
+    @Route(path = "/api/user/userpaginated", methods = Route.HttpMethod.GET)
+    void getAllUsersPaginated(RoutingContext context) {
+        authorize(context, "admin").flatMap(claims -> {
+            int size = intParam(context, "size", 5);
+            int page = intParam(context, "page", 0);
+            UserSort sort = UserSort.from(param(context, "sort"));
+            Sort.Direction direction = UserListingQueries.direction(Objects.requireNonNullElse(param(context, "order"), "Ascending"));
+            String username = param(context, "username");
+            String email = param(context, "email");
+            String after = param(context, "after");
+            CountMode countMode = CountMode.from(param(context, "countMode"));
+            return Objects.nonNull(after)
+                    ? findUsersAfter(sort, direction, size, username, email, after)
+                    : findPage(sort, direction, page, size, username, email, countMode);
+        }).subscribe().with(page -> {
+            EntityTag tag = entityTags.ofPage(page);
+            if (notModified(context, tag)) {
+                sendNotModified(context);
+            } else {
+                send(context, page, tag);
+            }
+        }, failure -> fail(context, failure));
+    }
+
+    private Uni<Map<String, Object>> findPage(UserSort sort, Sort.Direction direction, int page, int size,
+            String username, String email, CountMode countMode) {
+        Uni<List<UserSummary>> users = repository.findPage(username, email, sort, direction, null, size, page * size);
+        return Uni.combine().all().unis(users, totals(countMode, username, email)).asTuple().map(result -> {
+            Map<String, Object> response = new HashMap<>();
+            response.put("users", result.getItem1());
+            response.put("currentPage", page);
+            result.getItem2().ifPresent(totalItems -> {
+                response.put("totalItems", totalItems);
+                response.put("totalPages", (int) ((totalItems + size - 1) / size));
+            });
+            return response;
+        });
+    }
+
+    private Uni<Map<String, Object>> findUsersAfter(UserSort sort, Sort.Direction direction, int size, String username,
+            String email, String after) {
+        if (size < 1) {
+            throw new ObjectNotFoundException("Invalid size");
+        }
+        UserCursor cursor = after.isBlank() ? null : UserCursor.decode(after, sort, direction);
+        //one row more than requested tells whether there is a next page
+        return repository.findPage(username, email, sort, direction, cursor, size + 1, 0).map(rows -> {
+            List<UserSummary> users = new ArrayList<>(rows);
+            String nextCursor = null;
+            if (users.size() > size) {
+                users.remove(size);
+                UserSummary last = users.get(size - 1);
+                nextCursor = UserCursor.after(sort, direction, new UserRow(last.id(), last.username(), last.email(),
+                        last.enabled(), last.checked(), last.version())).encode();
+            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("users", users);
+            response.put("nextCursor", nextCursor);
+            return response;
+        });
+    }
+
+    /*
+    Authentication is not proactive, so the identity is resolved here from the deferred one
+    without blocking the event loop, which @RolesAllowed and the request scoped CurrentUser would do.
+     */
+    private Uni<UserClaims> authorize(RoutingContext context, String... roles) {
+        return QuarkusHttpUser.getSecurityIdentity(context, identityProviderManager).map(identity -> {
+            if (identity.isAnonymous()) {
+                throw new UnauthorizedException();
+            }
+            if (Arrays.stream(roles).noneMatch(identity::hasRole)) {
+                throw new ForbiddenException();
+            }
+            return UserClaims.from((JsonWebToken) identity.getPrincipal());
+        });
+    }
+
+    //Same rules as UserTotals.count, with the count and the estimate read without blocking
+    private Uni<OptionalLong> totals(CountMode countMode, String username, String email) {
+        String signature = UserTotals.signature(username, email);
+        if (countMode == CountMode.NONE) {
+            return Uni.createFrom().item(OptionalLong.empty());
+        }
+        if (countMode == CountMode.ESTIMATED && signature.isEmpty()) {
+            return repository.estimatedCount().flatMap(estimate -> estimate < 0
+                    ? exact(signature, username, email)
+                    : Uni.createFrom().item(OptionalLong.of(estimate)));
+        }
+        return exact(signature, username, email);
+    }
+
+    private Uni<OptionalLong> exact(String signature, String username, String email) {
+        long generation = userTotals.generation();
+        OptionalLong cached = userTotals.cached(signature);
+        if (cached.isPresent()) {
+            return Uni.createFrom().item(cached);
+        }
+        return repository.count(username, email)
+                .invoke(count -> userTotals.store(signature, count, generation))
+                .map(OptionalLong::of);
+    }
+
+    private static boolean notModified(RoutingContext context, EntityTag tag) {
+        String ifNoneMatch = context.request().getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (Objects.isNull(ifNoneMatch)) {
+            return false;
+        }
+        String current = "\"" + tag.getValue() + "\"";
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void send(RoutingContext context, Object body, EntityTag tag) {
+        try {
+            context.response()
+                    .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                    .putHeader(HttpHeaders.ETAG, "\"" + tag.getValue() + "\"")
+                    .putHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE)
+                    .end(objectMapper.writeValueAsString(body));
+        } catch (JsonProcessingException e) {
+            fail(context, e);
+        }
+    }
+
+    private static void sendNotModified(RoutingContext context) {
+        context.response()
+                .setStatusCode(304)
+                .putHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE)
+                .end();
+    }
+
+    //Same body as ObjectNotFoundExceptionMapper, anything else is left to the default failure handler
+    private void fail(RoutingContext context, Throwable failure) {
+        if (failure instanceof UnauthorizedException || failure instanceof AuthenticationFailedException) {
+            context.response().setStatusCode(401).end();
+            return;
+        }
+        if (failure instanceof ForbiddenException) {
+            context.response().setStatusCode(403).end();
+            return;
+        }
+        if (failure instanceof ObjectNotFoundException || failure instanceof NumberFormatException) {
+            HttpServerResponse response = context.response();
+            try {
+                response.setStatusCode(400)
+                        .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                        .end(objectMapper.writeValueAsString(
+                                new StandardMsg(System.currentTimeMillis(), 400, failure.getMessage(), "")));
+            } catch (JsonProcessingException e) {
+                context.fail(e);
+            }
+            return;
+        }
+        log.error("Reactive user route failed", failure);
+        context.fail(failure);
+    }
+
+    private static String param(RoutingContext context, String name) {
+        List<String> values = context.queryParam(name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    private static int intParam(RoutingContext context, String name, int defaultValue) {
+        String value = param(context, name);
+        return Objects.isNull(value) ? defaultValue : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,145 @@
+package org.acme;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.RestAssured;
+import io.vertx.core.json.JsonObject;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.acme.user.UserModel;
+import org.acme.user.UserService;
+import org.junit.jupiter.api.*;
+
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+
+/*
+Runs only with the reactive Maven profile, against the Vert.x routes of ReactiveUserRoutes.
+Authentication is not proactive there, so every request goes through the deferred identity.
+ */
+@QuarkusTest
+@Tag("integration")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReactiveUserRoutesTest {
+
+    @Inject
+    UserService userService;
+
+    Map<String, String> cookie;
+    long userId;
+
+    @Order(1)
+    @DisplayName("[GET] Login a verified user")
+    @Test
+    void login() {
+        JsonObject user = new JsonObject();
+        user.put("username", "Reactive");
+        user.put("email", "reactive.user@mail.com");
+        user.put("password", "123456");
+
+        RestAssured.given()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(user.toString())
+                .when()
+                .post("/api/user/register")
+                .then()
+                .statusCode(Response.Status.OK.getStatusCode());
+        userId = verify("reactive.user@mail.com");
+
+        user.remove("username");
+        cookie = RestAssured.given()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(user.toString())
+                .when()
+                .post("/api/user/login")
+                .then()
+                .statusCode(Response.Status.OK.getStatusCode())
+                .extract()
+                .response()
+                .getCookies();
+    }
+
+    @Order(2)
+    @DisplayName("[GET] Get User by id without a cookie")
+    @Test
+    void getUserByIdAnonymous() {
+        RestAssured.given()
+                .when()
+                .get("/api/user/" + userId)
+                .then()
+                .statusCode(Response.Status.UNAUTHORIZED.getStatusCode());
+    }
+
+    @Order(3)
+    @DisplayName("[GET] Get User by id")
+    @Test
+    void getUserById() {
+        String tag = RestAssured.given()
+                .cookies(cookie)
+                .when()
+                .get("/api/user/" + userId)
+                .then()
+                .statusCode(Response.Status.OK.getStatusCode())
+                .body("email", equalTo("reactive.user@mail.com"))
+                .header("ETag", notNullValue())
+                .extract()
+                .header("ETag");
+
+        RestAssured.given()
+                .cookies(cookie)
+                .header("If-None-Match", tag)
+                .when()
+                .get("/api/user/" + userId)
+                .then()
+                .statusCode(Response.Status.NOT_MODIFIED.getStatusCode());
+    }
+
+    @Order(4)
+    @DisplayName("[GET] Get other user information")
+    @Test
+    void getOtherUser() {
+        RestAssured.given()
+                .cookies(cookie)
+                .when()
+                .get("/api/user/" + (userId + 1))
+                .then()
+                .statusCode(Response.Status.BAD_REQUEST.getStatusCode())
+                .body("msg", equalTo("User can return only your data"));
+    }
+
+    @Order(5)
+    @DisplayName("[GET] Get User by an id out of range")
+    @Test
+    void getUserByOverflowingId() {
+        RestAssured.given()
+                .cookies(cookie)
+                .when()
+                .get("/api/user/99999999999999999999")
+                .then()
+                .statusCode(Response.Status.BAD_REQUEST.getStatusCode());
+    }
+
+    @Order(6)
+    @DisplayName("[GET] Users paginated without the admin role")
+    @Test
+    void getUsersPaginatedAsUser() {
+        RestAssured.given()
+                .cookies(cookie)
+                .when()
+                .get("/api/user/userpaginated")
+                .then()
+                .statusCode(Response.Status.FORBIDDEN.getStatusCode());
+    }
+
+    private long verify(String email) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            UserModel user = userService.getUserByEmail(email);
+            user.setChecked(true);
+            return user.getId();
+        });
+    }
+}
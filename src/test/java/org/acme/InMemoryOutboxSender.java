@@ -0,0 +1,38 @@
+package org.acme;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.acme.outbox.OutboxMessage;
+import org.acme.outbox.OutboxSender;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+Stand-in for the mail sender in tests: keeps what was sent and fails on demand for a recipient.
+ */
+@ApplicationScoped
+public class InMemoryOutboxSender implements OutboxSender {
+
+    private final List<OutboxMessage> sent = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+
+    @Override
+    public void send(OutboxMessage message) {
+        int remaining = failures.getOrDefault(message.getRecipient(), 0);
+        if (remaining > 0) {
+            failures.put(message.getRecipient(), remaining - 1);
+            throw new IllegalStateException("Mail server unavailable");
+        }
+        sent.add(message);
+    }
+
+    public void failFor(String recipient, int times) {
+        failures.put(recipient, times);
+    }
+
+    public List<OutboxMessage> sentTo(String recipient) {
+        return sent.stream().filter(message -> message.getRecipient().equals(recipient)).toList();
+    }
+}
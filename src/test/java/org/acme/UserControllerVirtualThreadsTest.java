@@ -0,0 +1,37 @@
+package org.acme;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.enterprise.inject.Typed;
+import jakarta.inject.Inject;
+import org.acme.utils.VirtualThreads;
+import org.junit.jupiter.api.BeforeEach;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+//The UserControllerTest flows with the /api/user requests handed off to virtual threads
+@QuarkusTest
+//keeps the test instance lookup of UserControllerTest unambiguous
+@Typed(UserControllerVirtualThreadsTest.class)
+@TestProfile(UserControllerVirtualThreadsTest.VirtualThreadsProfile.class)
+class UserControllerVirtualThreadsTest extends UserControllerTest {
+
+    @Inject
+    VirtualThreads virtualThreads;
+
+    //needs a Java 21 runtime, run with -Pjava21
+    @BeforeEach
+    void requireVirtualThreads() {
+        assumeTrue(virtualThreads.active());
+    }
+
+    public static class VirtualThreadsProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("http.virtual-threads.enabled", "true");
+        }
+    }
+}
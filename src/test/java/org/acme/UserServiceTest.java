@@ -1,21 +1,55 @@
 package org.acme;
 
+import at.favre.lib.crypto.bcrypt.BCrypt;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jayway.jsonpath.JsonPath;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
+import jakarta.persistence.EntityManagerFactory;
 import jakarta.transaction.Transactional;
 import org.acme.exceptions.ObjectNotFoundException;
+import org.acme.outbox.OutboxDispatcher;
+import org.acme.outbox.OutboxMessage;
+import org.acme.outbox.OutboxRepository;
+import org.acme.outbox.OutboxStatus;
+import org.acme.security.ExpiredTokenReaper;
+import org.acme.security.refreshtoken.RefreshTokenModel;
+import org.acme.security.refreshtoken.RefreshTokenRepository;
+import org.acme.security.refreshtoken.RefreshTokenStore;
+import org.acme.security.password.PasswordHashingPolicy;
 import org.acme.security.verificationtoken.VerificationTokenModel;
+import org.acme.security.verificationtoken.VerificationTokenRepository;
+import org.acme.security.verificationtoken.VerificationTokenSigner;
 import org.acme.user.*;
+import org.acme.utils.EntityTags;
 import org.acme.utils.RegistrationCompleteEvent;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -40,6 +74,57 @@ class UserServiceTest {
     @Inject
     UserMapper userMapper;
 
+    @Inject
+    PasswordHashingPolicy passwordHashingPolicy;
+
+    @Inject
+    EntityManagerFactory entityManagerFactory;
+
+    @Inject
+    UserTotals userTotals;
+
+    @Inject
+    UserExporter userExporter;
+
+    @Inject
+    UserImporter userImporter;
+
+    @Inject
+    UserBulkOperations userBulkOperations;
+
+    @Inject
+    VerificationTokenRepository verificationTokenRepository;
+
+    @Inject
+    UserListingQueries userListingQueries;
+
+    @Inject
+    EntityTags entityTags;
+
+    @Inject
+    OutboxDispatcher outboxDispatcher;
+
+    @Inject
+    OutboxRepository outboxRepository;
+
+    @Inject
+    InMemoryOutboxSender outboxSender;
+
+    @Inject
+    VerificationTokenSigner verificationTokenSigner;
+
+    @Inject
+    ExpiredTokenReaper expiredTokenReaper;
+
+    @Inject
+    RefreshTokenStore refreshTokenStore;
+
+    @Inject
+    RefreshTokenRepository refreshTokenRepository;
+
+    @Inject
+    UserEmailFilter userEmailFilter;
+
 
     @BeforeAll
     void setUp() {
@@ -588,4 +673,534 @@ class UserServiceTest {
         assertTrue(actualMessage.contains(expectedMessage));
     }
 
+    @Order(25)
+    @Transactional
+    @DisplayName("Authenticate user rehash password stored with other cost")
+    @Test
+    void AuthenticateUserRehashPassword() {
+        UserModel userModel5 = new UserModel();
+        userModel5.setUsername("Lucia");
+        userModel5.setEmail("lucia.prado@mail.com");
+        userModel5.setPassword(BCrypt.withDefaults().hashToString(4, "123456".toCharArray()));
+        userModel5.setChecked(true);
+        userRepository.persistAndFlush(userModel5);
+
+        //when
+        userService.authenticate(new LoginDto("lucia.prado@mail.com","123456"));
+        String storedHash = userService.getUserByEmail("lucia.prado@mail.com").getPassword();
+
+        //then
+        assertFalse(passwordHashingPolicy.needsRehash(storedHash));
+        assertTrue(BCrypt.verifyer().verify("123456".toCharArray(), storedHash).verified);
+        //a stronger hash from a faster node is kept, one above max-cost is not
+        assertFalse(passwordHashingPolicy.needsRehash("$2a$11$" + storedHash.substring(7)));
+        assertTrue(passwordHashingPolicy.needsRehash("$2a$17$" + storedHash.substring(7)));
+    }
+
+    @Order(26)
+    @DisplayName("Authenticate user with a single SQL statement")
+    @Test
+    void AuthenticateUserSingleStatement() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        LoginDto loginDto = new LoginDto("roberto.nascimento@mail.com","123456");
+        userService.authenticate(loginDto);//hash already on the current cost
+
+        //when
+        statistics.clear();
+        Map<String,Object> response = userService.authenticate(loginDto);
+
+        //then
+        assertNotNull(response.get("token"));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Order(27)
+    @DisplayName("Get user from the second level cache and see role updates")
+    @Test
+    void GetUserByIdSecondLevelCache() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long id = userService.getUserByEmail("roberto.nascimento@mail.com").getId();
+        QuarkusTransaction.requiringNew().call(() -> userService.getUserById(id).getRoles().size());
+
+        //when
+        statistics.clear();
+        int rolesCount = QuarkusTransaction.requiringNew().call(() -> userService.getUserById(id).getRoles().size());
+        long statements = statistics.getPrepareStatementCount();
+        QuarkusTransaction.requiringNew().run(() -> userService.updateUserRole(new UpdateUserRole(id, Set.of("user", "manager")), id));
+        Set<String> roles = QuarkusTransaction.requiringNew().call(() -> Set.copyOf(userService.getUserById(id).getRoles()));
+
+        //then
+        assertEquals(1, rolesCount);
+        assertEquals(0, statements);
+        assertTrue(statistics.getSecondLevelCacheHitCount() >= 2);
+        assertEquals(Set.of("user", "manager"), roles);
+    }
+
+    @Order(28)
+    @DisplayName("User version changes when the roles change")
+    @Test
+    void GetUserVersionAfterRoleUpdate() {
+        long id = userService.getUserByEmail("roberto.nascimento@mail.com").getId();
+        long version = userService.getUserVersion(id);
+
+        //when
+        QuarkusTransaction.requiringNew().run(() -> userService.updateUserRole(new UpdateUserRole(id, Set.of("user")), id));
+
+        //then
+        assertTrue(userService.getUserVersion(id) > version);
+    }
+
+    @Order(29)
+    @DisplayName("Get a page of users with a constant number of statements")
+    @Test
+    void getAllUsersPageStatements() throws JsonProcessingException {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        //when
+        userTotals.invalidate();
+        statistics.clear();
+        Map<String, Object> page = userService.findAllUsersSorted("id", "Ascending", 0, 100);
+        String json = new ObjectMapper().writeValueAsString(page);
+
+        //then
+        assertEquals(3, statistics.getPrepareStatementCount());//rows, roles of the page and count
+        assertFalse(json.contains("password"));
+        assertEquals("user", JsonPath.read(json, "$.users[1].roles[0]").toString());
+    }
+
+    @Order(30)
+    @DisplayName("Get all users by cursor in the same order as by page")
+    @Test
+    void getAllUsersByCursor() {
+        List<?> byPage = (List<?>) userService.findByEmail("username", "Descending", 0, 100, "mail").get("users");
+
+        //when
+        List<Object> byCursor = new ArrayList<>();
+        String cursor = "";
+        do {
+            Map<String, Object> page = userService.findUsersAfter("username", "Descending", 2, null, "mail", cursor);
+            byCursor.addAll((List<?>) page.get("users"));
+            cursor = (String) page.get("nextCursor");
+        } while (Objects.nonNull(cursor));
+
+        //then
+        assertTrue(byPage.size() > 2);
+        assertEquals(byPage, byCursor);
+    }
+
+    @Order(31)
+    @DisplayName("Get users total from the cache until a user is saved")
+    @Test
+    void getAllUsersCachedTotal() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long total = (long) userService.findByEmail("id", "Ascending", 0, 5, "mail.com").get("totalItems");
+
+        //when
+        statistics.clear();
+        Map<String, Object> cached = userService.findByEmail("id", "Ascending", 0, 5, "mail.com");
+        long statements = statistics.getPrepareStatementCount();
+        UserModel userModel6 = new UserModel();
+        userModel6.setUsername("Joana");
+        userModel6.setEmail("joana.freitas@mail.com");
+        userModel6.setPassword("123456");
+        userService.save2User(userMapper.toUserDto(userModel6));
+        Map<String, Object> afterSave = userService.findByEmail("id", "Ascending", 0, 5, "mail.com");
+        Map<String, Object> withoutTotals = userService.findByEmail("id", "Ascending", 0, 5, "mail.com", CountMode.NONE);
+
+        //then
+        assertEquals(2, statements);//rows and roles of the page
+        assertEquals(total, cached.get("totalItems"));
+        assertEquals(total + 1, afterSave.get("totalItems"));
+        assertFalse(withoutTotals.containsKey("totalItems"));
+    }
+
+    @Order(32)
+    @DisplayName("Get user by email ignoring case")
+    @Test
+    void GetUserByEmailIgnoringCase() {
+        //when
+        UserModel user = userService.getUserByEmail("Roberto.Nascimento@MAIL.com");
+        Map<String, Object> page = userService.findByUsername("id", "Ascending", 0, 5, "ROBERTO");
+
+        //then
+        assertEquals("roberto.nascimento@mail.com", user.getEmail());
+        assertEquals(1L, page.get("totalItems"));
+    }
+
+    @Order(33)
+    @DisplayName("Suggest users by prefix as they are saved, renamed and deleted")
+    @Test
+    void SuggestUsersByPrefix() {
+        UserModel userModel7 = new UserModel();
+        userModel7.setUsername("Xavier");
+        userModel7.setEmail("xavier.moura@mail.com");
+        userModel7.setPassword("123456");
+        userService.save2User(userMapper.toUserDto(userModel7));
+        long id = userService.getUserByEmail("xavier.moura@mail.com").getId();
+
+        //when
+        List<Long> byUsername = userService.suggest("XAV", 10);
+        List<Long> byEmail = userService.suggest("xavier.m", 10);
+        userService.update2User(new UpdateUserDto(id, "Yuri", true), id);
+        List<Long> afterRename = userService.suggest("yu", 10);
+        userService.deleteUser(id);
+        List<Long> afterDelete = userService.suggest("x", 10);
+
+        //then
+        assertEquals(List.of(id), byUsername);
+        assertEquals(List.of(id), byEmail);
+        assertEquals(List.of(id), afterRename);
+        assertFalse(afterDelete.contains(id));
+    }
+
+    @Order(34)
+    @DisplayName("Export all users as NDJSON and CSV")
+    @Test
+    void ExportUsers() throws IOException {
+        long total = userRepository.count();
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+
+        //when
+        userExporter.export(ExportFormat.NDJSON).write(ndjson);
+        userExporter.export(ExportFormat.CSV).write(csv);
+        List<String> lines = ndjson.toString(StandardCharsets.UTF_8).lines().toList();
+        List<String> csvLines = csv.toString(StandardCharsets.UTF_8).lines().toList();
+        String roberto = lines.stream().filter(line -> line.contains("roberto.nascimento@mail.com")).findFirst().orElseThrow();
+
+        //then
+        assertEquals(total, lines.size());
+        assertEquals(total + 1, csvLines.size());
+        assertEquals("user", JsonPath.read(roberto, "$.roles[0]").toString());
+        assertFalse(roberto.contains("password"));
+    }
+
+    @Order(35)
+    @DisplayName("Import users in bulk with a result per row")
+    @Test
+    void ImportUsers() {
+        String csv = """
+                username,email,password
+                Bruna,bruna.lima@mail.com,123456
+                "Lima, Bruna",Bruna.Lima@mail.com,123456
+                Roberto,roberto.nascimento@mail.com,123456
+                Caio,caio.mendes@mail.com,
+                Davi,davi.rocha@mail.com,"12,34"
+                """;
+
+        //when
+        ImportReport report = userImporter.importUsers(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ExportFormat.CSV,
+                "http://localhost:8080");
+        UserModel davi = userService.getUserByEmail("davi.rocha@mail.com");
+        String sentUrl = QuarkusTransaction.requiringNew().call(() ->
+                outboxRepository.find("recipient", "davi.rocha@mail.com").firstResult().getPayload());
+
+        //then
+        assertEquals(5, report.rows());
+        assertEquals(2, report.imported());
+        assertEquals(List.of("imported", "duplicate", "duplicate", "invalid", "imported"),
+                report.results().stream().map(ImportResult::status).toList());
+        assertEquals(davi.getId(), report.results().get(4).id());
+        assertTrue(BCrypt.verifyer().verify("12,34".toCharArray(), davi.getPassword()).verified);
+        assertTrue(davi.getRoles().contains("user"));
+        //the imported user gets the same link as on registration and can verify the account with it
+        assertTrue(sentUrl.startsWith("http://localhost:8080/user/verifyEmail?token="));
+        assertEquals("valid", userService.validateToken(sentUrl.substring(sentUrl.indexOf("token=") + 6)));
+        assertTrue(QuarkusTransaction.requiringNew().call(() -> userService.getUserByEmail("davi.rocha@mail.com").isChecked()));
+    }
+
+    @Order(36)
+    @DisplayName("Bulk operations by filter and by ids keep roles, tokens and caches consistent")
+    @Test
+    void BulkOperations() {
+        UserModel bruna = userService.getUserByEmail("bruna.lima@mail.com");
+        UserModel davi = userService.getUserByEmail("davi.rocha@mail.com");
+
+        //when
+        BulkResult roles = userBulkOperations.setRoles(new BulkUserRequest(null, null, "BRUNA.LIMA", null, Set.of("user", "admin")));
+        BulkResult disabled = userBulkOperations.setEnabled(new BulkUserRequest(List.of(bruna.getId(), davi.getId(), bruna.getId()), null, null, false, null));
+        BulkResult deleted = userBulkOperations.delete(new BulkUserRequest(null, null, "davi.rocha@", null, null));
+
+        //then
+        assertEquals(1, roles.affected());
+        assertEquals(2, disabled.affected());
+        assertEquals(1, deleted.affected());
+        //read in a new persistence context, the one of this test still holds the users loaded above
+        UserModel updated = QuarkusTransaction.requiringNew().call(() -> {
+            UserModel user = userService.getUserByEmail("bruna.lima@mail.com");
+            user.getRoles().size();
+            return user;
+        });
+        assertEquals(Set.of("user", "admin"), Set.copyOf(updated.getRoles()));
+        assertFalse(updated.isEnabled());
+        assertNull(userService.getUserByEmail("davi.rocha@mail.com"));
+        assertEquals(0L, QuarkusTransaction.requiringNew().call(() ->
+                verificationTokenRepository.count("user.id", davi.getId())));
+        assertThrows(ObjectNotFoundException.class, () -> userBulkOperations.delete(new BulkUserRequest(List.of(), null, null, null, null)));
+    }
+
+    @Order(37)
+    @DisplayName("Listings only run prebuilt queries, served by indexes and by the query plan cache")
+    @Test
+    void ListingQueries() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        //when
+        userService.findByUsernameAndEmail("email", "Descending", 0, 5, "a", "mail");
+        userService.findUsersAfter("username", "Ascending", 2, null, "mail", "");
+        userService.findAllUsersSorted("id", "Ascending", 1, 5, CountMode.EXACT);
+
+        //then
+        assertTrue(userListingQueries.unindexedSorts().isEmpty());
+        //all of them were parsed at startup, no HQL is compiled while listing
+        assertEquals(0, userListingQueries.all().stream()
+                .mapToLong(hql -> statistics.getQueryStatistics(hql).getPlanCompilationTotalMicroseconds()).sum());
+        assertTrue(userListingQueries.all().stream()
+                .mapToLong(hql -> statistics.getQueryStatistics(hql).getPlanCacheHitCount()).sum() >= 4);
+        assertThrows(ObjectNotFoundException.class, () -> userService.findAllUsersSorted("password", "Ascending", 0, 5));
+        assertThrows(ObjectNotFoundException.class, () -> userService.findByEmail("email", "sideways", 0, 5, "mail"));
+    }
+
+    @Order(38)
+    @DisplayName("Verification email is queued with the registration and sent by the dispatcher with retries")
+    @Test
+    void VerificationEmailOutbox() {
+        UserModel elisa = new UserModel();
+        elisa.setUsername("Elisa");
+        elisa.setEmail("elisa.prado@mail.com");
+        elisa.setPassword("123456");
+        outboxSender.failFor("elisa.prado@mail.com", 1);
+
+        //given
+        UserModel registered = QuarkusTransaction.requiringNew().call(() -> {
+            UserModel user = userService.save2User(userMapper.toUserDto(elisa));
+            event.sendVerificationToken(user, "http://localhost:8080");
+            return user;
+        });
+        assertTrue(outboxSender.sentTo("elisa.prado@mail.com").isEmpty());
+
+        //when
+        outboxDispatcher.dispatch();
+
+        //then
+        OutboxMessage retry = QuarkusTransaction.requiringNew().call(() ->
+                outboxRepository.find("recipient", "elisa.prado@mail.com").firstResult());
+        assertEquals(OutboxStatus.PENDING, retry.getStatus());
+        assertEquals(1, retry.getAttempts());
+        assertTrue(retry.getAvailableAt().isAfter(Instant.now()));
+        assertTrue(retry.getLastError().contains("Mail server unavailable"));
+
+        //when the backoff is over
+        QuarkusTransaction.requiringNew().run(() ->
+                outboxRepository.update("availableAt = ?1 where id = ?2", Instant.now(), retry.getId()));
+        outboxDispatcher.dispatch();
+
+        //then
+        String token = QuarkusTransaction.requiringNew().call(() -> userService.getVerificationTokenByUser(registered).getToken());
+        List<OutboxMessage> sent = outboxSender.sentTo("elisa.prado@mail.com");
+        assertEquals(1, sent.size());
+        assertEquals("http://localhost:8080/user/verifyEmail?token=" + token, sent.get(0).getPayload());
+        assertEquals(0L, QuarkusTransaction.requiringNew().call(() -> outboxRepository.countPending()));
+    }
+
+    @Order(39)
+    @DisplayName("Signed verification tokens are checked without reading the database")
+    @Test
+    void SignedVerificationToken() {
+        UserModel fabio = new UserModel();
+        fabio.setUsername("Fabio");
+        fabio.setEmail("fabio.serra@mail.com");
+        fabio.setPassword("123456");
+        UserModel gina = new UserModel();
+        gina.setUsername("Gina");
+        gina.setEmail("gina.morais@mail.com");
+        gina.setPassword("123456");
+        long id = QuarkusTransaction.requiringNew().call(() -> userService.save2User(userMapper.toUserDto(fabio)).getId());
+        long ginaId = QuarkusTransaction.requiringNew().call(() -> userService.save2User(userMapper.toUserDto(gina)).getId());
+        String ginaToken = verificationTokenSigner.sign(ginaId);
+        String expired = verificationTokenSigner.sign(id, Instant.now().minusSeconds(3600));
+        String token = verificationTokenSigner.sign(id);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        //when
+        List<String> expiredResults = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            expiredResults.add(userService.validateToken(expired));
+        }
+        statistics.clear();
+        String tampered = userService.validateToken(token.substring(0, token.length() - 2) + "xx");
+        String otherUser = userService.validateToken(token.replaceFirst("^\\d+", String.valueOf(id + 1)));
+        long statementsOfInvalid = statistics.getPrepareStatementCount();
+        String valid = userService.validateToken(ginaToken);
+        long statementsOfValid = statistics.getPrepareStatementCount() - statementsOfInvalid;
+        String reused = userService.validateToken(ginaToken);
+
+        //then
+        assertEquals(List.of("expired", "expired", "expired", "expired", "abuse", "timeout"), expiredResults);
+        assertEquals("invalid", tampered);
+        assertEquals("invalid", otherUser);
+        assertEquals(0, statementsOfInvalid);
+        assertEquals("valid", valid);
+        assertEquals(1, statementsOfValid);
+        assertEquals("invalid", reused);
+        assertTrue(QuarkusTransaction.requiringNew().call(() -> userService.getUserById(ginaId).isChecked()));
+        //the lockout also holds for a fresh token until it ends
+        assertEquals("timeout", userService.validateToken(token));
+    }
+
+    @Order(40)
+    @DisplayName("Concurrent checks of one stored token are serialised by the conditional update")
+    @Test
+    void ConcurrentTokenValidation() throws Exception {
+        UserModel helena = new UserModel();
+        helena.setUsername("Helena");
+        helena.setEmail("helena.castro@mail.com");
+        helena.setPassword("123456");
+        UserModel ivo = new UserModel();
+        ivo.setUsername("Ivo");
+        ivo.setEmail("ivo.teixeira@mail.com");
+        ivo.setPassword("123456");
+        QuarkusTransaction.requiringNew().run(() -> {
+            event.sendVerificationToken(userService.save2User(userMapper.toUserDto(helena)), "http://localhost:8080");
+            event.sendVerificationToken(userService.save2User(userMapper.toUserDto(ivo)), "http://localhost:8080");
+        });
+        String fresh = QuarkusTransaction.requiringNew().call(() ->
+                verificationTokenRepository.find("user.email", "helena.castro@mail.com").firstResult().getToken());
+        String expired = QuarkusTransaction.requiringNew().call(() -> {
+            VerificationTokenModel token = verificationTokenRepository.find("user.email", "ivo.teixeira@mail.com").firstResult();
+            token.setExpirationTime(new Date(System.currentTimeMillis() - 1000));
+            return token.getToken();
+        });
+
+        //when
+        Map<String, Long> freshResults = hammer(fresh, 16);
+        Map<String, Long> expiredResults = hammer(expired, 16);
+
+        //then only one click verifies the account, the others find the token gone
+        assertEquals(Map.of("valid", 1L, "invalid", 15L), freshResults);
+        assertTrue(QuarkusTransaction.requiringNew().call(() -> userService.getUserByEmail("helena.castro@mail.com").isChecked()));
+        //no lost update of checkedTimes: 4 expired checks, then one lockout, then timeouts
+        assertEquals(Map.of("expired", 4L, "abuse", 1L, "timeout", 11L), expiredResults);
+    }
+
+    private Map<String, Long> hammer(String token, int clicks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clicks);
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < clicks; i++) {
+                tasks.add(() -> userService.validateToken(token));
+            }
+            List<String> results = new ArrayList<>();
+            for (Future<String> result : executor.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            return results.stream().collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Order(41)
+    @DisplayName("Reaper deletes tokens past their retention in chunks")
+    @Test
+    void ExpiredTokenReaper() {
+        List<Long> ids = new ArrayList<>();
+        for (String name : List.of("Joana", "Karina", "Lucas")) {
+            UserModel user = new UserModel();
+            user.setUsername(name);
+            user.setEmail(name.toLowerCase() + ".reaper@mail.com");
+            user.setPassword("123456");
+            ids.add(QuarkusTransaction.requiringNew().call(() -> {
+                UserModel saved = userService.save2User(userMapper.toUserDto(user));
+                event.sendVerificationToken(saved, "http://localhost:8080");
+                return saved.getId();
+            }));
+        }
+        Date longAgo = new Date(System.currentTimeMillis() - Duration.ofDays(60).toMillis());
+        QuarkusTransaction.requiringNew().run(() ->
+                verificationTokenRepository.update("expirationTime = ?1 where user.id in ?2", longAgo, ids));
+        //one stale refresh token row and one fresh, both also held by the store
+        String stale = refreshTokenStore.rotate(ids.get(0));
+        String fresh = refreshTokenStore.rotate(ids.get(1));
+        QuarkusTransaction.requiringNew().run(() -> {
+            persistRefreshToken(ids.get(0), stale, longAgo.toInstant());
+            persistRefreshToken(ids.get(1), fresh, Instant.now());
+        });
+        long remainingTokens = QuarkusTransaction.requiringNew().call(() -> verificationTokenRepository.count());
+
+        //when
+        long purgedVerificationTokens = expiredTokenReaper.purgeVerificationTokens();
+        long purgedRefreshTokens = expiredTokenReaper.purgeRefreshTokens();
+
+        //then
+        assertEquals(3, purgedVerificationTokens);
+        assertEquals(remainingTokens - 3, QuarkusTransaction.requiringNew().call(() -> verificationTokenRepository.count()));
+        assertEquals(1, purgedRefreshTokens);
+        assertTrue(refreshTokenStore.findByUser(ids.get(0)).isEmpty());
+        assertEquals(fresh, refreshTokenStore.findByUser(ids.get(1)).orElseThrow());
+        assertEquals(0, expiredTokenReaper.purgeRefreshTokens());
+    }
+
+    private void persistRefreshToken(long userId, String token, Instant issuedAt) {
+        RefreshTokenModel refreshToken = new RefreshTokenModel();
+        refreshToken.setUserModel(userRepository.findById(userId));
+        refreshToken.setToken(token);
+        refreshToken.setIssuedAt(issuedAt);
+        refreshTokenRepository.persist(refreshToken);
+    }
+
+    @Order(42)
+    @DisplayName("Registration skips the email lookup on a filter miss and relies on the unique index")
+    @Test
+    void EmailFilter() {
+        UserModel miguel = new UserModel();
+        miguel.setUsername("Miguel");
+        miguel.setEmail("miguel.reis@mail.com");
+        miguel.setPassword("123456");
+        UserModel sameEmail = new UserModel();
+        sameEmail.setUsername("Miguel");
+        sameEmail.setEmail("MIGUEL.REIS@mail.com");
+        sameEmail.setPassword("123456");
+        //persisted straight through the repository, so the filter never saw it
+        UserModel felipe = new UserModel();
+        felipe.setUsername("Felipe");
+        felipe.setEmail("felipe.azevedo@mail.com");
+        felipe.setPassword("123456");
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        //when
+        long id = QuarkusTransaction.requiringNew().call(() -> userService.save2User(userMapper.toUserDto(miguel)).getId());
+        long queries = statistics.getQueryExecutionCount();
+
+        //then
+        assertEquals(0, queries);
+        assertTrue(userEmailFilter.mightContain("Miguel.Reis@mail.com"));
+        ObjectNotFoundException duplicate = assertThrows(ObjectNotFoundException.class,
+                () -> QuarkusTransaction.requiringNew().call(() -> userService.save2User(userMapper.toUserDto(sameEmail))));
+        assertEquals("Email already in use", duplicate.getMessage());
+        assertFalse(userEmailFilter.mightContain("felipe.azevedo@mail.com"));
+        ObjectNotFoundException missed = assertThrows(ObjectNotFoundException.class,
+                () -> QuarkusTransaction.requiringNew().call(() -> userService.save2User(userMapper.toUserDto(felipe))));
+        assertEquals("Email already in use", missed.getMessage());
+        userService.deleteUser(id);
+        assertFalse(userEmailFilter.mightContain("miguel.reis@mail.com"));
+        assertTrue(userEmailFilter.currentFalsePositiveRate() <= 0.01);
+    }
+
+    @Order(43)
+    @DisplayName("A keyset page with the same rows gets another ETag once it has a next cursor")
+    @Test
+    void PageTagCoversNextCursor() {
+        List<UserSummary> users = List.of(new UserSummary(1L, "Admin", "admin@mail.com", true, true, Set.of("admin"), 0L));
+        Map<String, Object> lastPage = new HashMap<>();
+        lastPage.put("users", users);
+        lastPage.put("nextCursor", null);
+        Map<String, Object> notLastAnymore = new HashMap<>(lastPage);
+        notLastAnymore.put("nextCursor", "cursor");
+
+        //then
+        assertNotEquals(entityTags.ofPage(lastPage), entityTags.ofPage(notLastAnymore));
+    }
 }
@@ -0,0 +1,63 @@
+package org.acme.benchmark;
+
+import io.smallrye.jwt.auth.principal.DefaultJWTCallerPrincipal;
+import org.acme.security.UserClaims;
+import org.jose4j.jwt.JwtClaims;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+Compares the old cookie substring parsing done on every protected request with reading
+the typed claims from the already verified token.
+
+Run with: ./mvnw -Pbenchmark test -Dbenchmark.include=ClaimsParsingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClaimsParsingBenchmark {
+
+    private String legacyCookie;
+    private DefaultJWTCallerPrincipal verifiedToken;
+
+    @Setup
+    public void setUp() throws Exception {
+        String legacyPayload = "{\"upn\":\"{firstName=Jhon, id=2}\",\"groups\":[\"user\",\"admin\"],"
+                + "\"exp\":1700000000,\"iat\":1699998200,\"jti\":\"3f1c9b7e-1b8a-4c5e-9a43-6d2f0c2a1e77\"}";
+        legacyCookie = "eyJhbGciOiJSUzI1NiJ9." + encode(legacyPayload) + ".c2lnbmF0dXJl";
+
+        JwtClaims claims = new JwtClaims();
+        claims.setClaim("upn", "jhon.spencer@mail.com");
+        claims.setSubject("2");
+        claims.setClaim(UserClaims.USERNAME, "Jhon");
+        claims.setStringListClaim("groups", List.of("user", "admin"));
+        claims.setExpirationTimeMinutesInTheFuture(30);
+        verifiedToken = new DefaultJWTCallerPrincipal(claims);
+    }
+
+    @Benchmark
+    public boolean substringParsing() {
+        String[] chunks = legacyCookie.split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(chunks[1]));
+        String userId = payload.substring(payload.indexOf("id", payload.indexOf("=")) + 3, payload.indexOf("}", payload.indexOf("}")));
+        String roles = payload.substring(payload.indexOf("[", payload.indexOf("[")) + 1, payload.indexOf("]", payload.indexOf("]")));
+        return Integer.parseInt(userId) == 2 || roles.contains("admin");
+    }
+
+    @Benchmark
+    public boolean typedClaims() {
+        UserClaims claims = UserClaims.from(verifiedToken);
+        return claims.id() == 2 || claims.isAdmin();
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,89 @@
+package org.acme.benchmark;
+
+import io.smallrye.jwt.algorithm.SignatureAlgorithm;
+import io.smallrye.jwt.auth.principal.DefaultJWTParser;
+import io.smallrye.jwt.auth.principal.JWTAuthContextInfo;
+import io.smallrye.jwt.auth.principal.ParseException;
+import io.smallrye.jwt.build.Jwt;
+import io.smallrye.jwt.build.JwtSignatureBuilder;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+Sign and verify throughput of the algorithms supported by jwt.signing.algorithm, using the
+same claims the login and refresh token endpoints put in the token.
+
+Run with: ./mvnw -Pbenchmark test -Dbenchmark.include=JwtSigningBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtSigningBenchmark {
+
+    @Param({"RS256", "ES256", "EDDSA"})
+    public String algorithmName;
+
+    private SignatureAlgorithm algorithm;
+    private KeyPair keyPair;
+    private DefaultJWTParser parser;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        algorithm = SignatureAlgorithm.fromAlgorithm(algorithmName);
+        keyPair = generateKeyPair(algorithm);
+
+        JWTAuthContextInfo contextInfo = new JWTAuthContextInfo();
+        contextInfo.setSignatureAlgorithm(algorithm);
+        parser = new DefaultJWTParser(contextInfo);
+
+        token = sign();
+    }
+
+    @Benchmark
+    public String sign() {
+        JwtSignatureBuilder signature = Jwt.upn("jhon.spencer@mail.com")
+                .subject("2")
+                .preferredUserName("Jhon")
+                .groups(Set.of("user", "admin"))
+                .expiresIn(Duration.ofMinutes(30))
+                .jws()
+                .keyId("benchmark");
+        //same as JwtSigner: EdDSA is detected from the key
+        if (algorithm != SignatureAlgorithm.EDDSA) {
+            signature.algorithm(algorithm);
+        }
+        return signature.sign(keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public JsonWebToken verify() throws ParseException {
+        return parser.verify(token, keyPair.getPublic());
+    }
+
+    private static KeyPair generateKeyPair(SignatureAlgorithm algorithm) throws Exception {
+        KeyPairGenerator generator;
+        switch (algorithm) {
+            case ES256 -> {
+                generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+            }
+            case EDDSA -> generator = KeyPairGenerator.getInstance("Ed25519");
+            default -> {
+                generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(2048);
+            }
+        }
+        return generator.generateKeyPair();
+    }
+}
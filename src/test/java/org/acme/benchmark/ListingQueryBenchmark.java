@@ -0,0 +1,74 @@
+package org.acme.benchmark;
+
+import io.quarkus.panache.common.Sort;
+import org.acme.user.UserListingQueries;
+import org.acme.user.UserModel;
+import org.acme.user.UserRow;
+import org.acme.user.UserSort;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.query.SelectionQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+Cost of preparing the user listing query when its HQL has to be parsed, as happened for every
+filter/sort string Hibernate had not seen or had evicted from its plan cache, against taking
+one of the prebuilt UserListingQueries strings, which are always found in the plan cache.
+Only the query preparation is measured, nothing is executed.
+
+Run with: ./mvnw -Pbenchmark test -Dbenchmark.include=ListingQueryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingQueryBenchmark {
+
+    private SessionFactory parsing;
+    private SessionFactory cached;
+    private Session parsingSession;
+    private Session cachedSession;
+    private String hql;
+
+    @Setup
+    public void setUp() {
+        parsing = sessionFactory(false);
+        cached = sessionFactory(true);
+        parsingSession = parsing.openSession();
+        cachedSession = cached.openSession();
+        hql = new UserListingQueries().page(true, true, UserSort.USERNAME, Sort.Direction.Descending, true);
+        cachedSession.createSelectionQuery(hql, UserRow.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        parsingSession.close();
+        cachedSession.close();
+        parsing.close();
+        cached.close();
+    }
+
+    @Benchmark
+    public SelectionQuery<UserRow> parsedPerRequest() {
+        return parsingSession.createSelectionQuery(hql, UserRow.class);
+    }
+
+    @Benchmark
+    public SelectionQuery<UserRow> prebuilt() {
+        return cachedSession.createSelectionQuery(hql, UserRow.class);
+    }
+
+    private static SessionFactory sessionFactory(boolean planCache) {
+        return new Configuration()
+                .addAnnotatedClass(UserModel.class)
+                .setProperty(AvailableSettings.URL, "jdbc:h2:mem:listing;DB_CLOSE_DELAY=-1")
+                .setProperty(AvailableSettings.QUERY_PLAN_CACHE_ENABLED, String.valueOf(planCache))
+                .buildSessionFactory();
+    }
+}
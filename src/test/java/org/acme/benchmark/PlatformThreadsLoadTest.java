@@ -0,0 +1,16 @@
+package org.acme.benchmark;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+@QuarkusTest
+@TestProfile(UserApiLoadTest.PlatformThreadsProfile.class)
+@EnabledIfSystemProperty(named = "load-test", matches = "true")
+class PlatformThreadsLoadTest extends UserApiLoadTest {
+
+    @Override
+    String mode() {
+        return "platform threads";
+    }
+}
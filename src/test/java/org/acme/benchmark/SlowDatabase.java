@@ -0,0 +1,27 @@
+package org.acme.benchmark;
+
+import io.quarkus.hibernate.orm.PersistenceUnitExtension;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.time.Duration;
+
+//Adds load-test.db-latency to every statement, so the in-memory database answers like a remote one
+@PersistenceUnitExtension
+public class SlowDatabase implements StatementInspector {
+
+    @ConfigProperty(name = "load-test.db-latency", defaultValue = "0ms")
+    Duration latency;
+
+    @Override
+    public String inspect(String sql) {
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,99 @@
+package org.acme.benchmark;
+
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+Throughput and p99 latency of the admin listing under load-test.concurrency concurrent clients,
+with every statement delayed by load-test.db-latency. PlatformThreadsLoadTest and
+VirtualThreadsLoadTest run it with requests on the worker pool and on virtual threads.
+
+Run with: ./mvnw -Pjava21 test -Dtest='*ThreadsLoadTest' -Dload-test=true
+ */
+abstract class UserApiLoadTest {
+
+    private static final int CONCURRENCY = Integer.getInteger("load-test.concurrency", 1000);
+    private static final int REQUESTS = Integer.getInteger("load-test.requests", 20000);
+
+    @TestHTTPResource("/api/user/userpaginated?size=5&countMode=none")
+    URI listing;
+
+    abstract String mode();
+
+    static Map<String, String> config(boolean virtualThreads) {
+        return Map.of(
+                "http.virtual-threads.enabled", String.valueOf(virtualThreads),
+                "load-test.db-latency", System.getProperty("load-test.db-latency", "50ms"),
+                //connections are not the bottleneck being measured
+                "quarkus.datasource.jdbc.max-size", String.valueOf(CONCURRENCY),
+                "quarkus.hibernate-orm.log.sql", "false");
+    }
+
+    @Test
+    void listingUnderLoad() throws Exception {
+        String cookie = RestAssured.given().contentType("application/json")
+                .body("{\"email\":\"admin@mail.com\",\"password\":\"123456\"}")
+                .post("/api/user/login").then().statusCode(200).extract().cookie("jwt");
+        HttpRequest request = HttpRequest.newBuilder(listing).header("Cookie", "jwt=" + cookie).GET().build();
+
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        long[] latencies = new long[REQUESTS];
+        AtomicInteger errors = new AtomicInteger();
+
+        long started = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            int index = i;
+            clients.execute(() -> {
+                long sent = System.nanoTime();
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+                latencies[index] = System.nanoTime() - sent;
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(10, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("LOAD %s: %d requests, %d clients, %.0f req/s, p50 %d ms, p99 %d ms, %d errors%n",
+                mode(), REQUESTS, CONCURRENCY, REQUESTS / seconds,
+                TimeUnit.NANOSECONDS.toMillis(latencies[REQUESTS / 2]),
+                TimeUnit.NANOSECONDS.toMillis(latencies[(int) (REQUESTS * 0.99)]), errors.get());
+        assertEquals(0, errors.get());
+    }
+
+    public static class PlatformThreadsProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return config(false);
+        }
+    }
+
+    public static class VirtualThreadsProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return config(true);
+        }
+    }
+}
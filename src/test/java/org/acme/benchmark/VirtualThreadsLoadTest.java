@@ -0,0 +1,30 @@
+package org.acme.benchmark;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.acme.utils.VirtualThreads;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@QuarkusTest
+@TestProfile(UserApiLoadTest.VirtualThreadsProfile.class)
+@EnabledIfSystemProperty(named = "load-test", matches = "true")
+class VirtualThreadsLoadTest extends UserApiLoadTest {
+
+    @Inject
+    VirtualThreads virtualThreads;
+
+    //needs a Java 21 runtime
+    @BeforeEach
+    void requireVirtualThreads() {
+        assumeTrue(virtualThreads.active());
+    }
+
+    @Override
+    String mode() {
+        return "virtual threads";
+    }
+}
@@ -0,0 +1,84 @@
+package org.acme.security.password;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.RestAssured;
+import io.vertx.core.json.JsonObject;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/*
+One hashing thread and a queue of one, with a cost high enough for a hash to outlast the request
+that finds both taken.
+ */
+@QuarkusTest
+@TestProfile(PasswordHasherAdmissionTest.SmallPoolProfile.class)
+class PasswordHasherAdmissionTest {
+
+    @Inject
+    PasswordHasher passwordHasher;
+
+    @Inject
+    MeterRegistry registry;
+
+    @DisplayName("[POST] Register while the hashing pool and queue are full")
+    @Test
+    void rejectsWhenPoolAndQueueAreFull() {
+        double rejectedBefore = registry.counter("password.hashing.rejected").count();
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> passwordHasher.hash("running"));
+        awaitGauge("password.hashing.active", 1);
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> passwordHasher.hash("queued"));
+        awaitGauge("password.hashing.queue.depth", 1);
+
+        JsonObject user = new JsonObject();
+        user.put("username", "Busy");
+        user.put("email", "busy@mail.com");
+        user.put("password", "123456");
+
+        RestAssured.given()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(user.toString())
+                .when()
+                .post("/api/user/register")
+                .then()
+                .statusCode(Response.Status.SERVICE_UNAVAILABLE.getStatusCode())
+                .header("Retry-After", equalTo("7"))
+                .body("status", equalTo(503));
+
+        assertEquals(rejectedBefore + 1, registry.counter("password.hashing.rejected").count());
+        running.join();
+        queued.join();
+    }
+
+    private void awaitGauge(String name, double expected) {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            while (registry.get(name).gauge().value() < expected) {
+                Thread.sleep(10);
+            }
+        });
+    }
+
+    public static class SmallPoolProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "password.hashing.pool-size", "1",
+                    "password.hashing.queue-size", "1",
+                    "password.hashing.retry-after", "7",
+                    "password.hashing.cost", "13");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.acme.security.refreshtoken;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.acme.user.UserModel;
+import org.acme.user.UserRepository;
+import org.acme.user.UserService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+Each test works on a store of its own over the real table, as the application would after a restart.
+The profile gives the class a database of its own: the users it inserts would shift the ids
+the other test classes expect.
+ */
+@QuarkusTest
+@TestProfile(WriteBehindRefreshTokenStoreTest.StatisticsProfile.class)
+class WriteBehindRefreshTokenStoreTest {
+
+    @Inject
+    RefreshTokenRepository refreshTokenRepository;
+
+    @Inject
+    UserRepository userRepository;
+
+    @Inject
+    UserService userService;
+
+    @Inject
+    RefreshTokenStore refreshTokenStore;
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @DisplayName("Several rotations of a user are written as one row")
+    @Test
+    void rotationsCollapseIntoOneWrite() {
+        long userId = user("collapse@mail.com");
+        WriteBehindRefreshTokenStore store = store();
+
+        store.rotate(userId);
+        store.rotate(userId);
+        String last = store.rotate(userId);
+        Statistics statistics = sessionFactory.getStatistics();
+        long inserts = statistics.getEntityInsertCount();
+        store.flush();
+
+        assertEquals(1, statistics.getEntityInsertCount() - inserts);
+        assertEquals(List.of(last), tokensOf(userId));
+    }
+
+    @DisplayName("Changes reach the table only when flushed")
+    @Test
+    void flushWritesPendingChanges() {
+        long userId = user("flush@mail.com");
+        WriteBehindRefreshTokenStore store = store();
+
+        String token = store.rotate(userId);
+        List<String> beforeFlush = tokensOf(userId);
+        store.flush();
+        List<String> afterFlush = tokensOf(userId);
+        store.remove(userId);
+        store.flush();
+
+        assertEquals(List.of(), beforeFlush);
+        assertEquals(List.of(token), afterFlush);
+        assertEquals(List.of(), tokensOf(userId));
+    }
+
+    @DisplayName("A restarted store loads the tokens back from the table")
+    @Test
+    void warmUpAfterRestart() {
+        long userId = user("restart@mail.com");
+        WriteBehindRefreshTokenStore before = store();
+        String token = before.rotate(userId);
+        before.flush();
+
+        WriteBehindRefreshTokenStore after = store();
+        after.warmUp(null);
+
+        assertEquals(Optional.of(token), after.findByUser(userId));
+        assertEquals(Optional.of(userId), after.findUserByToken(token));
+    }
+
+    @DisplayName("A failing batch is written row by row")
+    @Test
+    void batchFailureFallsBackToRows() {
+        long userId = user("fallback@mail.com");
+        long missingUserId = userId + 1_000;
+        WriteBehindRefreshTokenStore store = store();
+
+        String token = store.rotate(userId);
+        store.rotate(missingUserId);
+        store.flush();
+
+        assertEquals(List.of(token), tokensOf(userId));
+        assertEquals(List.of(), tokensOf(missingUserId));
+    }
+
+    @DisplayName("Deleting a user forgets its refresh token")
+    @Test
+    void deleteUserRemovesToken() {
+        long userId = user("deleted@mail.com");
+        String token = refreshTokenStore.rotate(userId);
+        ((WriteBehindRefreshTokenStore) refreshTokenStore).flush();
+
+        userService.deleteUser(userId);
+
+        assertEquals(Optional.empty(), refreshTokenStore.findUserByToken(token));
+        assertEquals(List.of(), tokensOf(userId));
+    }
+
+    private WriteBehindRefreshTokenStore store() {
+        WriteBehindRefreshTokenStore store = new WriteBehindRefreshTokenStore();
+        store.refreshTokenRepository = refreshTokenRepository;
+        store.batchSize = 500;
+        return store;
+    }
+
+    private long user(String email) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            UserModel user = new UserModel();
+            user.setUsername(email.substring(0, email.indexOf('@')));
+            user.setEmail(email);
+            user.setPassword("123456");
+            user.setRoles(new HashSet<>(Set.of("user")));
+            userRepository.persist(user);
+            return user.getId();
+        });
+    }
+
+    private List<String> tokensOf(long userId) {
+        return QuarkusTransaction.requiringNew().call(() -> refreshTokenRepository.find("userModel.id", userId)
+                .stream().map(RefreshTokenModel::getToken).toList());
+    }
+
+    public static class StatisticsProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("quarkus.hibernate-orm.statistics", "true");
+        }
+    }
+}